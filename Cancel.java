@@ -0,0 +1,16 @@
+/**
+ * Polled by long-running searches so another thread can stop them early.
+ * A search that is stopped returns the best answer it has so far.
+ */
+public interface Cancel {
+
+	public boolean requested();
+
+	/** Stops only when the searching thread is interrupted **/
+	public static final Cancel ON_INTERRUPT = new Cancel() {
+		public boolean requested() {
+			return Thread.currentThread().isInterrupted();
+		}
+	};
+
+}
@@ -0,0 +1,126 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs every method on the same seeded scrambles and reports, per method,
+ * how many it solved, moves per solve, how long the robot (Methods.ROBOT)
+ * would take to turn them, solve latency percentiles and bytes allocated
+ * per solve. The scrambles are written to a Corpus once, before anything
+ * is measured, and only the solve itself is timed.
+ *
+ * Usage: java Compare [count] [seed] [method,...|all] [endgameFile]
+ */
+public class Compare {
+
+	private static final int WARMUP = 200;
+	private static final int SCRAMBLE_LENGTH = 30;
+
+	public static class Result {
+		public final String name;
+		public int solved;
+		public long moves;
+		public double robotTime;
+		public long allocated = -1;
+		public final long[] nanos;
+
+		public Result(String name, int count) {
+			this.name = name;
+			this.nanos = new long[count];
+		}
+
+		public long percentile(double p) {
+			if(nanos.length == 0) return 0;
+			long[] sorted = nanos.clone();
+			Arrays.sort(sorted);
+			return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+		}
+
+		public String toString() {
+			int n = nanos.length;
+			if(n == 0) return String.format("%-15s no scrambles", name);
+			return String.format("%-15s solved %d/%d  moves %.1f  robot %.1fs  p50 %dus  p90 %dus  p99 %dus  max %dus  alloc %s",
+				name, solved, n, (double) moves / n, robotTime / n,
+				percentile(0.5) / 1000, percentile(0.9) / 1000, percentile(0.99) / 1000, percentile(1) / 1000,
+				allocated < 0 ? "n/a" : (allocated / n / 1024) + "KB");
+		}
+	}
+
+	/** Writes WARMUP scrambles followed by count measured ones, all seeded, to a corpus file **/
+	public static void writeScrambles(File file, int count, long seed) throws IOException {
+		Corpus.Writer writer = new Corpus.Writer(file, false);
+		try {
+			for(int i = 0; i < WARMUP + count; i++) {
+				Cube cube = new Cube(true);
+				cube.mix(SCRAMBLE_LENGTH, new Random(i < WARMUP ? seed - i - 1 : seed + i - WARMUP));
+				writer.add(CubeState.of(cube));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** Runs the method on every scramble in the corpus, skipping the first WARMUP in the results **/
+	public static Result run(Method method, Corpus.Reader scrambles) throws IOException {
+		int count = (int) Math.max(0, scrambles.size() - WARMUP);
+		Result result = new Result(method.name(), count);
+		long allocated = 0;
+		int i = -WARMUP;
+		for(int b = 0; b < scrambles.blocks(); b++) {
+			Corpus.Block block = scrambles.block(b);
+			for(int k = 0; k < block.size(); k++, i++) {
+				Cube cube = block.state(k).toCube();
+				long allocStart = allocatedBytes();
+				long start = System.nanoTime();
+				boolean ok = method.solve(cube);
+				long nanos = System.nanoTime() - start;
+				long allocEnd = allocatedBytes();
+				if(i < 0) continue;
+
+				result.nanos[i] = nanos;
+				if(allocStart >= 0) allocated += allocEnd - allocStart;
+				if(ok) result.solved++;
+				for(String entry : cube.getLog()) {
+					if(cube.isMove(entry)) result.moves++;
+				}
+				result.robotTime += Methods.ROBOT.estimate(cube.getLog());
+			}
+		}
+		if(allocatedBytes() >= 0) result.allocated = allocated;
+		return result;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+		String names = args.length > 2 ? args[2] : "all";
+
+		List<Method> methods = new ArrayList<Method>();
+		for(String name : names.equals("all") ? Methods.NAMES : names.split(",")) methods.add(Methods.get(name));
+		if(args.length > 3) methods.add(new LayerByLayer("lbl-endgame").setEndgame(Endgame.open(new File(args[3]))));
+
+		File file = File.createTempFile("compare", ".corpus");
+		file.deleteOnExit();
+		writeScrambles(file, count, seed);
+		Corpus.Reader scrambles = new Corpus.Reader(file);
+		try {
+			for(Method method : methods) {
+				System.out.println(run(method, scrambles));
+			}
+		} finally {
+			scrambles.close();
+		}
+	}
+
+}
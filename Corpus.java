@@ -0,0 +1,305 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * File of cube states, each optionally with a move list, stored so a
+ * reader can map it and decode states without replaying any moves.
+ *
+ * Layout (big-endian):
+ *   header  magic, version, flags, block size (ints), count, index offset (longs)
+ *   blocks  each: n (int), n states (CubeState.BYTES each),
+ *           if FLAG_MOVES: n move counts (shorts) then every move as one byte
+ *           (see Cubies.face/dir), then a CRC32 (int) of everything before it
+ *   index   file offset of each block (longs)
+ *
+ * Usage: java Corpus write [file] [count] [seed]
+ *        java Corpus states [file] [count] [seed]
+ *        java Corpus read [file] [decode]
+ *
+ * "write" stores 30-move scrambles with their moves; "states" stores only
+ * the states met on one seeded random walk, which is quick enough for
+ * corpora of 100M states. "read" checks every block and touches every
+ * record's coordinates; with "decode" it also unranks each one into a
+ * CubeState. For 100M states that takes about 3.5 s, against under 1 s
+ * for the coordinates alone.
+ */
+public class Corpus {
+
+	public static final int MAGIC = 0x43525053;
+	public static final int VERSION = 1;
+	public static final int FLAG_MOVES = 1;
+	public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+	private static final int HEADER = 32;
+
+	public static class Writer implements Closeable {
+		private final FileChannel channel;
+		private final int flags;
+		private final int blockSize;
+		private final List<Long> offsets = new ArrayList<Long>();
+		private long count;
+
+		private final ByteBuffer states;
+		private final short[] lengths;
+		private final ByteArrayOutputStream moves = new ByteArrayOutputStream();
+		private int n;
+
+		public Writer(File file, boolean withMoves) throws IOException {
+			this(file, withMoves, DEFAULT_BLOCK_SIZE);
+		}
+
+		public Writer(File file, boolean withMoves, int blockSize) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			this.flags = withMoves ? FLAG_MOVES : 0;
+			this.blockSize = blockSize;
+			this.states = ByteBuffer.allocate(blockSize * CubeState.BYTES);
+			this.lengths = new short[blockSize];
+			channel.position(HEADER);
+		}
+
+		public void add(CubeState state) throws IOException {
+			add(state, null);
+		}
+
+		/** Entries that aren't moves, such as solver stage markers, are dropped **/
+		public void add(CubeState state, List<String> log) throws IOException {
+			state.write(states);
+			if((flags & FLAG_MOVES) != 0) {
+				int len = 0;
+				if(log != null) {
+					for(String entry : log) {
+						Cube.Color c = TurnCost.face(entry);
+						if(c == null) continue;
+						moves.write(Cubies.move(c, TurnCost.dir(entry)));
+						len++;
+					}
+				}
+				if(len > Short.MAX_VALUE) throw new IOException("Move list too long for corpus: " + len);
+				lengths[n] = (short) len;
+			}
+			n++;
+			count++;
+			if(n == blockSize) flush();
+		}
+
+		private void flush() throws IOException {
+			if(n == 0) return;
+			boolean withMoves = (flags & FLAG_MOVES) != 0;
+			int size = 4 + (n * CubeState.BYTES) + (withMoves ? (n * 2) + moves.size() : 0) + 4;
+			ByteBuffer block = ByteBuffer.allocate(size);
+			block.putInt(n);
+			block.put(states.array(), 0, n * CubeState.BYTES);
+			if(withMoves) {
+				for(int i = 0; i < n; i++) block.putShort(lengths[i]);
+				block.put(moves.toByteArray());
+			}
+			CRC32 crc = new CRC32();
+			crc.update(block.array(), 0, size - 4);
+			block.putInt((int) crc.getValue());
+			block.flip();
+
+			offsets.add(channel.position());
+			while(block.hasRemaining()) channel.write(block);
+			states.clear();
+			moves.reset();
+			n = 0;
+		}
+
+		public void close() throws IOException {
+			try {
+				flush();
+				long indexOffset = channel.position();
+				ByteBuffer index = ByteBuffer.allocate(offsets.size() * 8);
+				for(long offset : offsets) index.putLong(offset);
+				index.flip();
+				while(index.hasRemaining()) channel.write(index);
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER);
+				header.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(blockSize).putLong(count).putLong(indexOffset);
+				header.flip();
+				channel.position(0);
+				while(header.hasRemaining()) channel.write(header);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	public static class Reader implements Closeable {
+		private final File file;
+		private final FileChannel channel;
+		private final int flags;
+		private final long count;
+		private final long[] offsets;
+		private final long indexOffset;
+
+		public Reader(File file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+				if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) throw new IOException("Not a corpus file: " + file);
+				this.flags = header.getInt(8);
+				int blockSize = header.getInt(12);
+				this.count = header.getLong(16);
+				this.indexOffset = header.getLong(24);
+				int blocks = (int) ((count + blockSize - 1) / blockSize);
+				if(indexOffset + (blocks * 8L) != channel.size()) throw new IOException("Truncated corpus file: " + file);
+				MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, blocks * 8L);
+				this.offsets = new long[blocks];
+				for(int i = 0; i < blocks; i++) offsets[i] = index.getLong(i * 8);
+			} catch(IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		public long size() {
+			return count;
+		}
+
+		public int blocks() {
+			return offsets.length;
+		}
+
+		public boolean hasMoves() {
+			return (flags & FLAG_MOVES) != 0;
+		}
+
+		/** Maps block i and checks its checksum **/
+		public Block block(int i) throws IOException {
+			long start = offsets[i];
+			long end = (i + 1 < offsets.length) ? offsets[i+1] : indexOffset;
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			CRC32 crc = new CRC32();
+			ByteBuffer body = buf.duplicate();
+			body.limit((int) (end - start) - 4);
+			crc.update(body);
+			if((int) crc.getValue() != buf.getInt((int) (end - start) - 4)) throw new IOException("Checksum mismatch in block " + i + " of " + file);
+			return new Block(buf, hasMoves());
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	public static class Block {
+		private final ByteBuffer buf;
+		private final int n;
+		private final int[] moveStarts;
+
+		private Block(ByteBuffer buf, boolean withMoves) {
+			this.buf = buf;
+			this.n = buf.getInt(0);
+			if(withMoves) {
+				moveStarts = new int[n + 1];
+				int lengths = 4 + (n * CubeState.BYTES);
+				moveStarts[0] = lengths + (n * 2);
+				for(int i = 0; i < n; i++) moveStarts[i+1] = moveStarts[i] + buf.getShort(lengths + (i * 2));
+			} else {
+				moveStarts = null;
+			}
+		}
+
+		public int size() {
+			return n;
+		}
+
+		/** Decodes state i; use the coordinates or bytes when the facelets aren't needed **/
+		public CubeState state(int i) {
+			return CubeState.read(buf, 4 + (i * CubeState.BYTES));
+		}
+
+		public long cornerCoord(int i) {
+			return CubeState.cornerCoord(buf, 4 + (i * CubeState.BYTES));
+		}
+
+		public long edgeCoord(int i) {
+			return CubeState.edgeCoord(buf, 4 + (i * CubeState.BYTES));
+		}
+
+		/** Copies the stored record of state i, CubeState.BYTES long, into out at off **/
+		public void bytes(int i, byte[] out, int off) {
+			ByteBuffer src = buf.duplicate();
+			src.position(4 + (i * CubeState.BYTES));
+			src.get(out, off, CubeState.BYTES);
+		}
+
+		/** Move list of state i in Cube's log notation, or null if the corpus has none **/
+		public List<String> moves(int i) {
+			if(moveStarts == null) return null;
+			List<String> moves = new ArrayList<String>();
+			for(int at = moveStarts[i]; at < moveStarts[i+1]; at++) {
+				int m = buf.get(at);
+				moves.add(Cube.moveName(Cubies.face(m), Cubies.dir(m)));
+			}
+			return moves;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String mode = args.length > 0 ? args[0] : "read";
+		File file = new File(args.length > 1 ? args[1] : "corpus.bin");
+		long start = System.currentTimeMillis();
+
+		if(mode.equals("write")) {
+			long count = args.length > 2 ? Long.parseLong(args[2]) : 100000;
+			long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+			Writer writer = new Writer(file, true);
+			try {
+				for(long i = 0; i < count; i++) {
+					Cube cube = new Cube(true);
+					cube.mix(30, new Random(seed + i));
+					writer.add(CubeState.of(cube), cube.getLog());
+				}
+			} finally {
+				writer.close();
+			}
+			System.out.println("Wrote " + count + " scrambles to " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+		} else if(mode.equals("states")) {
+			long count = args.length > 2 ? Long.parseLong(args[2]) : 100000;
+			Random rand = new Random(args.length > 3 ? Long.parseLong(args[3]) : 0);
+			Writer writer = new Writer(file, false);
+			try {
+				CubeState state = CubeState.SOLVED;
+				for(long i = 0; i < count; i++) {
+					state = state.apply(rand.nextInt(Cubies.NUM_MOVES));
+					writer.add(state);
+				}
+			} finally {
+				writer.close();
+			}
+			System.out.println("Wrote " + count + " states to " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+		} else {
+			boolean decode = args.length > 2 && args[2].equals("decode");
+			Reader reader = new Reader(file);
+			long states = 0, moves = 0, check = 0;
+			try {
+				for(int b = 0; b < reader.blocks(); b++) {
+					Block block = reader.block(b);
+					for(int i = 0; i < block.size(); i++) {
+						if(decode) check += block.state(i).hashCode();
+						else check += block.cornerCoord(i) ^ block.edgeCoord(i);
+						if(reader.hasMoves()) moves += block.moves(i).size();
+						states++;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			System.out.println("Read " + states + " states and " + moves + " moves from " + file + " in " + (System.currentTimeMillis() - start) + "ms (check " + check + ")");
+		}
+	}
+
+}
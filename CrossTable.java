@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Distance to solved for every placement of the four white edges
+ * (12 * 11 * 10 * 9 positions * 16 orientations). Built once by a
+ * breadth-first search from the solved cross; walking downhill through
+ * it gives an optimal cross in at most 8 moves.
+ */
+public class CrossTable {
+
+	public static final int SIZE = 12 * 11 * 10 * 9 * 16;
+
+	// The cheapest cross may be longer than the shortest (at most 8), but not by much
+	public static final int MAX_LENGTH = 12;
+	// States the cost search may visit before settling for the best cross so far
+	public static final int MAX_NODES = 100000;
+
+	private static final int[] CROSS = crossSlots();
+	private static byte[] dist;
+
+	private static int[] crossSlots() {
+		int[] slots = new int[4];
+		int n = 0;
+		for(int i = 0; i < Cubies.EDGES.length; i++) {
+			if(Cubies.EDGES[i].colors.contains(Cube.WHITE)) slots[n++] = i;
+		}
+		return slots;
+	}
+
+	private static synchronized byte[] table() {
+		if(dist != null) return dist;
+		byte[] d = new byte[SIZE];
+		Arrays.fill(d, (byte) -1);
+
+		int[] solved = new int[4];
+		for(int i = 0; i < 4; i++) solved[i] = CROSS[i] * 2;
+		int[] queue = new int[SIZE];
+		int head = 0, tail = 0;
+		queue[tail++] = encode(solved);
+		d[queue[0]] = 0;
+
+		int[] facelets = new int[4];
+		while(head < tail) {
+			int idx = queue[head++];
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				int next = move(idx, m, facelets);
+				if(d[next] < 0) {
+					d[next] = (byte) (d[idx] + 1);
+					queue[tail++] = next;
+				}
+			}
+		}
+		dist = d;
+		return dist;
+	}
+
+	public static int encode(int[] facelets) {
+		int idx = 0, ori = 0;
+		for(int i = 0; i < 4; i++) {
+			int pos = facelets[i] / 2;
+			int rank = pos;
+			for(int j = 0; j < i; j++) {
+				if(facelets[j] / 2 < pos) rank--;
+			}
+			idx = (idx * (12 - i)) + rank;
+			ori = (ori * 2) + (facelets[i] % 2);
+		}
+		return (idx * 16) + ori;
+	}
+
+	public static void decode(int idx, int[] facelets) {
+		int ori = idx % 16;
+		idx /= 16;
+		int[] ranks = new int[4];
+		for(int i = 3; i >= 0; i--) {
+			ranks[i] = idx % (12 - i);
+			idx /= (12 - i);
+		}
+		boolean[] used = new boolean[12];
+		for(int i = 0; i < 4; i++) {
+			int pos = -1;
+			for(int r = ranks[i]; r >= 0; r--) {
+				pos++;
+				while(used[pos]) pos++;
+			}
+			used[pos] = true;
+			facelets[i] = (pos * 2) + ((ori >> (3 - i)) & 1);
+		}
+	}
+
+	private static int move(int idx, int m, int[] facelets) {
+		decode(idx, facelets);
+		for(int i = 0; i < 4; i++) facelets[i] = Cubies.EDGE_MOVE[m][facelets[i]];
+		return encode(facelets);
+	}
+
+	public static int index(Cube cube) {
+		int[] facelets = new int[4];
+		for(int i = 0; i < 4; i++) facelets[i] = Cubies.facelet(cube, Cubies.EDGES, CROSS[i]);
+		return encode(facelets);
+	}
+
+	public static int distance(Cube cube) {
+		return table()[index(cube)];
+	}
+
+	/** Moves (see Cubies.face/dir) of an optimal white cross from the cube's current state **/
+	public static List<Integer> solve(Cube cube) {
+		return solve(cube, TurnCost.HTM);
+	}
+
+	public static List<Integer> solve(Cube cube, TurnCost cost) {
+		return solve(cube, cost, Cancel.ON_INTERRUPT);
+	}
+
+	/**
+	 * Cheapest cross under the cost model, which may be longer than the
+	 * shortest one. Branch and bound over all moves, with the table's
+	 * distance times the cheapest turn as the lower bound, starting from
+	 * the cost of a shortest cross. The bound is weak when some turns are
+	 * much cheaper than others, so the search gives up after MAX_NODES
+	 * states, or when cancelled, and returns the cheapest cross found so far.
+	 */
+	public static List<Integer> solve(Cube cube, TurnCost cost, Cancel cancel) {
+		byte[] d = table();
+		int idx = index(cube);
+		int[] facelets = new int[4];
+
+		List<Integer> best = new ArrayList<Integer>();
+		double bestCost = 0;
+		Cube.Color prev = null;
+		for(int at = idx; d[at] > 0; ) {
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				int next = move(at, m, facelets);
+				if(d[next] == d[at] - 1) {
+					best.add(m);
+					bestCost += cost.cost(prev, Cubies.face(m), Cubies.dir(m));
+					prev = Cubies.face(m);
+					at = next;
+					break;
+				}
+			}
+		}
+
+		double min = cost.minCost();
+		if(!(min > 0)) return best;
+		Search search = new Search(d, cost, min, bestCost, (int) Math.min(MAX_LENGTH, (bestCost / min) + 1), cancel);
+		search.run(idx, null, 0, 0);
+		if(search.best == null) return best;
+
+		List<Integer> moves = new ArrayList<Integer>();
+		for(int m : search.best) moves.add(m);
+		return moves;
+	}
+
+	private static class Search {
+		final byte[] d;
+		final TurnCost cost;
+		final double min;
+		final int[] path;
+		final Cancel cancel;
+		double bestCost;
+		int[] best;
+		int nodes;
+		boolean stop;
+
+		Search(byte[] d, TurnCost cost, double min, double bestCost, int maxLength, Cancel cancel) {
+			this.d = d;
+			this.cost = cost;
+			this.min = min;
+			this.bestCost = bestCost;
+			this.path = new int[maxLength];
+			this.cancel = cancel;
+		}
+
+		boolean stopped() {
+			if(!stop) stop = nodes > MAX_NODES || ((nodes & 1023) == 0 && cancel.requested());
+			return stop;
+		}
+
+		void run(int idx, Cube.Color prev, int depth, double sofar) {
+			nodes++;
+			if(d[idx] == 0) {
+				if(sofar < bestCost) {
+					bestCost = sofar;
+					best = Arrays.copyOf(path, depth);
+				}
+				return;
+			}
+			if(depth == path.length) return;
+			int[] facelets = new int[4];
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				if(stopped()) return;
+				Cube.Color c = Cubies.face(m);
+				if(c == prev) continue;
+				int next = move(idx, m, facelets);
+				double g = sofar + cost.cost(prev, c, Cubies.dir(m));
+				if(g + (d[next] * min) >= bestCost) continue;
+				path[depth] = m;
+				run(next, c, depth + 1, g);
+			}
+		}
+	}
+
+}
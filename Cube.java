@@ -2,6 +2,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Cube {
 
@@ -96,6 +97,12 @@ public class Cube {
 	
 	}
 
+	/** Told about every turn as soon as it is made, and every marker (such as a solver stage) as it is logged **/
+	public static interface Listener {
+		public void turned(Color c, int dir, String move);
+		public void marked(String marker);
+	}
+
 	public class Piece {
 		private Type type;
 		private Tile[] tiles;
@@ -286,6 +293,7 @@ public class Cube {
 	public HashMap<Spot, Piece> pieces;
 	public HashMap<Spot, Piece> pieceAt;
 	public ArrayList<String> moveLog;
+	private List<Listener> listeners;
 
 	public Spot spot(Color... colors) {
 		return new Spot(colors);
@@ -296,6 +304,8 @@ public class Cube {
 		pieceAt = new HashMap<Spot, Piece>();
 		faces = new HashMap<Color, Face>();
 		moveLog = new ArrayList<String>();
+		// Listeners may be added or removed from other threads while a solve is turning the cube
+		listeners = new CopyOnWriteArrayList<Listener>();
 
 		faces.put(WHITE, new Face(WHITE, new Color[]{ RED, GREEN, ORANGE, BLUE }));
 		faces.put(RED, new Face(RED, new Color[]{ WHITE, BLUE, YELLOW, GREEN }));
@@ -342,22 +352,36 @@ public class Cube {
 		return pieceAt.get(spot);
 	}
 
-	public void rotate(Color c, int dir) {
-		faces.get(c).rotate(dir);
-		String toLog = "";
+	public static String moveName(Color c, int dir) {
 		switch(dir) {
-			case CW: toLog = c.toString(); break;
-			case CCW: toLog = c.toString() + "'"; break;
+			case CW: return c.toString();
+			case CCW: return c.toString() + "'";
 			case DBL_CW:
-			case DBL_CCW: toLog = c.toString() + c.toString(); break;
+			case DBL_CCW: return c.toString() + c.toString();
 		}
+		return "";
+	}
+
+	public static String inverseMove(String move) {
+		if(move.length() == 1) return move + "'";
+		if(move.charAt(1) == '\'') return move.substring(0, 1);
+		return move;
+	}
+
+	public void rotate(Color c, int dir) {
+		faces.get(c).rotate(dir);
+		String toLog = moveName(c, dir);
 		log(toLog);
+		for(Listener l : listeners) l.turned(c, dir, toLog);
 	}
 
 	public void mix(int num) {
+		mix(num, new Random());
+	}
+
+	public void mix(int num, Random rand) {
 		Color[] colors = { WHITE, GREEN, RED, BLUE, ORANGE, YELLOW };
 		int[] moves = { DBL_CCW, CCW, CW, DBL_CW };
-		Random rand = new Random();
 		for(int i = 0; i < num; i++) {
 			Color c = colors[rand.nextInt(6)];
 			int move = moves[rand.nextInt(4)];
@@ -410,22 +434,80 @@ public class Cube {
 		moveLog.add(s);
 	}
 
+	/** Logs a non-move entry and passes it on to listeners **/
+	public void mark(String marker) {
+		log(marker);
+		for(Listener l : listeners) l.marked(marker);
+	}
+
+	public void addListener(Listener l) {
+		listeners.add(l);
+	}
+
+	public void removeListener(Listener l) {
+		listeners.remove(l);
+	}
+
 	public void compressLog() {
-		int i = 0;
-		String cur, next, next2;
-		while(i < log.size() - 2) {
-			cur = log.get(i);
-			next = log.get(i+1);
-			next2 = log.get(i+2);
-			if(isMove(cur) && isMove(next)) {
-				if(cur.equals(next + "'") || next.equals(cur + "'")) {
-					log.remove(i); log.remove(i+1); i--;
-				} else if(((cur.length() == 1) || (cur.length() == 2 && cur.charAt(1) == '\'')) && cur.equals(next)) {
-					log.set(i, cur.substring(0, 1) + cur.substring(0, 1));
-					log.remove(i+1); i--;
+		compressLog(TurnCost.HTM);
+	}
+
+	/**
+	 * Merges turns of the same face, including ones separated only by a turn
+	 * of the opposite face, then writes each as its cheapest equivalent under
+	 * the cost model. Markers such as solver stages are left in place and
+	 * nothing is merged across them.
+	 */
+	public void compressLog(TurnCost cost) {
+		ArrayList<String> compressed = compress(moveLog, cost);
+		moveLog.clear();
+		moveLog.addAll(compressed);
+	}
+
+	public static ArrayList<String> compress(List<String> log, TurnCost cost) {
+		ArrayList<Color> turned = new ArrayList<Color>();
+		ArrayList<Integer> quarters = new ArrayList<Integer>();
+		ArrayList<String> markers = new ArrayList<String>();
+
+		for(String entry : log) {
+			Color c = TurnCost.face(entry);
+			if(c == null) {
+				turned.add(null); quarters.add(0); markers.add(entry);
+				continue;
+			}
+			int n = turned.size();
+			int target = -1;
+			if(n > 0 && turned.get(n-1) == c) {
+				target = n-1;
+			} else if(n > 1 && turned.get(n-1) == Cubies.opposite(c) && turned.get(n-2) == c) {
+				target = n-2;
+			}
+			if(target < 0) {
+				turned.add(c); quarters.add(TurnCost.quarters(entry)); markers.add(null);
+			} else {
+				int q = (quarters.get(target) + TurnCost.quarters(entry)) % 4;
+				if(q == 0) {
+					turned.remove(target); quarters.remove(target); markers.remove(target);
+				} else {
+					quarters.set(target, q);
 				}
 			}
 		}
+
+		ArrayList<String> out = new ArrayList<String>();
+		Color prev = null;
+		for(int i = 0; i < turned.size(); i++) {
+			Color c = turned.get(i);
+			if(c == null) {
+				out.add(markers.get(i));
+				continue;
+			}
+			for(int dir : cost.cheapest(prev, c, quarters.get(i))) {
+				out.add(moveName(c, dir));
+				prev = c;
+			}
+		}
+		return out;
 	}
 
 	public ArrayList<String> getLog() {
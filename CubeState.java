@@ -0,0 +1,236 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable cube state that can be shared between threads and used as a
+ * map key. Each piece's facelet (see Cubies) takes 5 bits, so the corners
+ * fit in one long and the edges in another.
+ *
+ * Convert with CubeState.of(cube) and toCube(), and use Cube for anything
+ * that needs tiles, faces or a move log.
+ */
+public final class CubeState {
+
+	private static final int BITS = 5;
+	private static final long MASK = (1L << BITS) - 1;
+
+	/**
+	 * Bytes in the binary encoding: cornerCoord << 45 | edgeCoord << 5 as a
+	 * big-endian 72-bit number, the same layout as an Endgame record with
+	 * distance 0.
+	 */
+	public static final int BYTES = 9;
+	private static final long LOW_35 = (1L << 35) - 1;
+
+	// Decoding tables, so fromCoords allocates nothing but the state. The
+	// edge permutation rank splits into the slots of edges 0-3 (HEAD) and
+	// the order of the rest among the slots left free (TAIL).
+	private static final long[] CORNER_PERM = new long[40320];
+	private static final long[] CORNER_ORI = new long[2187];
+	private static final long[] EDGE_ORI = new long[2048];
+	private static final long[] EDGE_HEAD = new long[12 * 11 * 10 * 9];
+	private static final int[] EDGE_FREE = new int[12 * 11 * 10 * 9];
+	private static final int[] EDGE_TAIL = new int[40320];
+
+	static {
+		int[] c = new int[8], e = new int[12];
+		for(int r = 0; r < CORNER_PERM.length; r++) {
+			Cubies.corners(r * 2187L, c);
+			CORNER_PERM[r] = pack(c);
+		}
+		for(int o = 0; o < CORNER_ORI.length; o++) {
+			Cubies.corners(o, c);
+			for(int i = 0; i < 8; i++) c[i] %= 3;
+			CORNER_ORI[o] = pack(c);
+		}
+		for(int o = 0; o < EDGE_ORI.length; o++) {
+			Cubies.edges(o, e);
+			for(int i = 0; i < 12; i++) e[i] %= 2;
+			EDGE_ORI[o] = pack(e);
+		}
+		for(int h = 0; h < EDGE_HEAD.length; h++) {
+			Cubies.edges(h * 40320L * 2048, e);
+			long head = 0;
+			int used = 0;
+			for(int i = 0; i < 4; i++) {
+				head |= ((long) e[i]) << (i * BITS);
+				used |= 1 << (e[i] / 2);
+			}
+			int free = 0;
+			for(int slot = 11; slot >= 0; slot--) {
+				if((used & (1 << slot)) == 0) free = (free << 4) | slot;
+			}
+			EDGE_HEAD[h] = head;
+			EDGE_FREE[h] = free;
+		}
+		for(int t = 0; t < EDGE_TAIL.length; t++) {
+			// With edges 0-3 home, slot 4 + k is the k-th free slot
+			Cubies.edges(t * 2048L, e);
+			int tail = 0;
+			for(int i = 4; i < 12; i++) tail |= ((e[i] / 2) - 4) << ((i - 4) * 3);
+			EDGE_TAIL[t] = tail;
+		}
+	}
+
+	public static final CubeState SOLVED = of(new Cube(true));
+
+	private final long corners;
+	private final long edges;
+
+	private CubeState(long corners, long edges) {
+		this.corners = corners;
+		this.edges = edges;
+	}
+
+	public static CubeState of(Cube cube) {
+		int[] c = new int[8], e = new int[12];
+		Cubies.read(cube, c, e);
+		return new CubeState(pack(c), pack(e));
+	}
+
+	public static CubeState fromCoords(long cornerCoord, long edgeCoord) {
+		long corners = CORNER_PERM[(int) (cornerCoord / 2187)] + CORNER_ORI[(int) (cornerCoord % 2187)];
+		int rank = (int) (edgeCoord / 2048);
+		int head = rank / 40320, tail = EDGE_TAIL[rank % 40320], free = EDGE_FREE[head];
+		long edges = EDGE_HEAD[head] + EDGE_ORI[(int) (edgeCoord % 2048)];
+		for(int i = 4; i < 12; i++, tail >>>= 3) {
+			long slot = (free >>> ((tail & 7) * 4)) & 15;
+			edges += (slot * 2) << (i * BITS);
+		}
+		return new CubeState(corners, edges);
+	}
+
+	public CubeState apply(int move) {
+		return new CubeState(apply(corners, 8, Cubies.CORNER_MOVE[move]), apply(edges, 12, Cubies.EDGE_MOVE[move]));
+	}
+
+	public CubeState apply(Cube.Color c, int dir) {
+		return apply(Cubies.move(c, dir));
+	}
+
+	public boolean isSolved() {
+		return this.equals(SOLVED);
+	}
+
+	public void corners(int[] out) {
+		unpack(corners, out);
+	}
+
+	public void edges(int[] out) {
+		unpack(edges, out);
+	}
+
+	public long cornerCoord() {
+		int[] c = new int[8];
+		unpack(corners, c);
+		return Cubies.cornerCoord(c);
+	}
+
+	public long edgeCoord() {
+		int[] e = new int[12];
+		unpack(edges, e);
+		return Cubies.edgeCoord(e);
+	}
+
+	public void write(ByteBuffer buf) {
+		long c = cornerCoord(), e = edgeCoord();
+		buf.putInt((int) ((c << 5) | (e >>> 35)));
+		long lo = (e & LOW_35) << 5;
+		for(int b = 32; b >= 0; b -= 8) buf.put((byte) (lo >>> b));
+	}
+
+	public static CubeState read(ByteBuffer buf) {
+		CubeState state = read(buf, buf.position());
+		buf.position(buf.position() + BYTES);
+		return state;
+	}
+
+	/** Reads the state stored at index at, without moving the buffer's position **/
+	public static CubeState read(ByteBuffer buf, int at) {
+		return fromCoords(cornerCoord(buf, at), edgeCoord(buf, at));
+	}
+
+	/** Corner coordinate of the state stored at index at, without decoding the state **/
+	public static long cornerCoord(ByteBuffer buf, int at) {
+		return (buf.getInt(at) & 0xFFFFFFFFL) >>> 5;
+	}
+
+	/** Edge coordinate of the state stored at index at, without decoding the state **/
+	public static long edgeCoord(ByteBuffer buf, int at) {
+		long lo = 0;
+		for(int i = 4; i < BYTES; i++) lo = (lo << 8) | (buf.get(at + i) & 0xFF);
+		return ((buf.getInt(at) & 31L) << 35) | (lo >>> 5);
+	}
+
+	public byte[] toBytes() {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES);
+		write(buf);
+		return buf.array();
+	}
+
+	public static CubeState fromBytes(byte[] bytes) {
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	/** A new Cube, with an empty move log, in this state **/
+	public Cube toCube() {
+		Cube cube = new Cube(true);
+		int[] c = new int[8], e = new int[12];
+		unpack(corners, c);
+		unpack(edges, e);
+		place(cube, Cubies.CORNERS, c);
+		place(cube, Cubies.EDGES, e);
+		cube.pieceAt.clear();
+		for(Cube.Piece p : cube.pieces.values()) cube.pieceAt.put(p.spot(), p);
+		return cube;
+	}
+
+	private static void place(Cube cube, Cube.Spot[] slots, int[] facelets) {
+		for(int i = 0; i < slots.length; i++) {
+			int size = slots[i].colors.size();
+			Cube.Spot to = slots[facelets[i] / size];
+			int ori = facelets[i] % size;
+			Cube.Piece p = cube.pieces.get(slots[i]);
+			for(int k = 0; k < size; k++) {
+				Cube.Tile t = p.getTile(slots[i].colors.get(k));
+				t.face = cube.faces.get(to.colors.get((ori + k) % size));
+			}
+		}
+	}
+
+	private static long apply(long packed, int n, int[] table) {
+		long out = 0;
+		for(int i = 0; i < n; i++) {
+			int f = (int) ((packed >>> (i * BITS)) & MASK);
+			out |= ((long) table[f]) << (i * BITS);
+		}
+		return out;
+	}
+
+	private static long pack(int[] facelets) {
+		long packed = 0;
+		for(int i = 0; i < facelets.length; i++) packed |= ((long) facelets[i]) << (i * BITS);
+		return packed;
+	}
+
+	private static void unpack(long packed, int[] facelets) {
+		for(int i = 0; i < facelets.length; i++) facelets[i] = (int) ((packed >>> (i * BITS)) & MASK);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof CubeState)) return false;
+		CubeState o = (CubeState) other;
+		return o.corners == corners && o.edges == edges;
+	}
+
+	@Override
+	public int hashCode() {
+		long h = (corners * 0x9E3779B97F4A7C15L) ^ edges;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	public String toString() {
+		return "CubeState(" + Long.toHexString(corners) + "," + Long.toHexString(edges) + ")";
+	}
+
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+
+/**
+ * Piece-level view of the cube used by the table-driven searches.
+ *
+ * A piece's place is given as a facelet number, slot * 2 + ori for edges
+ * and slot * 3 + ori for corners, where ori is the index within the slot's
+ * Spot of the face showing the piece's first (white or yellow, for corners)
+ * tile. Move tables are read off a real Cube, so they always agree with
+ * Cube.rotate.
+ *
+ * A whole state packs into a corner coordinate (27 bits) and an edge
+ * coordinate (40 bits) built from permutation ranks and orientations.
+ */
+public class Cubies {
+
+	public static final Cube.Color[] FACES = { Cube.WHITE, Cube.GREEN, Cube.RED, Cube.BLUE, Cube.ORANGE, Cube.YELLOW };
+	public static final int[] DIRS = { Cube.CW, Cube.CCW, Cube.DBL_CW };
+	public static final int NUM_MOVES = FACES.length * DIRS.length;
+
+	private static final Cube.Color[] OPPOSITES = opposites();
+
+	public static final Cube.Spot[] EDGES = edgeSlots();
+	public static final Cube.Spot[] CORNERS = cornerSlots();
+
+	// EDGE_MOVE[move][facelet] is where an edge facelet ends up after the move
+	public static final int[][] EDGE_MOVE = moveTable(EDGES);
+	public static final int[][] CORNER_MOVE = moveTable(CORNERS);
+
+	public static Cube.Color opposite(Cube.Color c) {
+		return OPPOSITES[c.val];
+	}
+
+	public static Cube.Color face(int move) {
+		return FACES[move / DIRS.length];
+	}
+
+	public static int dir(int move) {
+		return DIRS[move % DIRS.length];
+	}
+
+	public static int move(Cube.Color c, int dir) {
+		int face = 0;
+		while(FACES[face] != c) face++;
+		int d = (dir == Cube.DBL_CCW) ? Cube.DBL_CW : dir;
+		int idx = 0;
+		while(DIRS[idx] != d) idx++;
+		return (face * DIRS.length) + idx;
+	}
+
+	public static void apply(Cube cube, int move) {
+		cube.rotate(face(move), dir(move));
+	}
+
+	public static int slot(Cube.Spot[] slots, Cube.Spot spot) {
+		for(int i = 0; i < slots.length; i++) {
+			if(slots[i].equals(spot)) return i;
+		}
+		return -1;
+	}
+
+	/** Facelet currently holding the first tile of the piece that belongs in slots[home] **/
+	public static int facelet(Cube cube, Cube.Spot[] slots, int home) {
+		Cube.Piece p = cube.pieces.get(slots[home]);
+		Cube.Spot at = p.spot();
+		int slot = slot(slots, at);
+		Cube.Spot target = slots[slot];
+		Cube.Color showing = p.getTiles()[0].face.color;
+		return slot * target.colors.size() + target.colors.indexOf(showing);
+	}
+
+	/** Reads the facelet of every corner and edge piece, indexed by home slot **/
+	public static void read(Cube cube, int[] corners, int[] edges) {
+		for(int i = 0; i < CORNERS.length; i++) corners[i] = facelet(cube, CORNERS, i);
+		for(int i = 0; i < EDGES.length; i++) edges[i] = facelet(cube, EDGES, i);
+	}
+
+	public static void apply(int move, int[] corners, int[] edges) {
+		for(int i = 0; i < corners.length; i++) corners[i] = CORNER_MOVE[move][corners[i]];
+		for(int i = 0; i < edges.length; i++) edges[i] = EDGE_MOVE[move][edges[i]];
+	}
+
+	public static long cornerCoord(int[] corners) {
+		return (rank(corners, 3) * 2187) + ori(corners, 3);
+	}
+
+	public static long edgeCoord(int[] edges) {
+		return (rank(edges, 2) * 2048) + ori(edges, 2);
+	}
+
+	public static void corners(long coord, int[] corners) {
+		unpack(coord / 2187, coord % 2187, corners, 3);
+	}
+
+	public static void edges(long coord, int[] edges) {
+		unpack(coord / 2048, coord % 2048, edges, 2);
+	}
+
+	private static long rank(int[] facelets, int size) {
+		long rank = 0;
+		for(int i = 0; i < facelets.length; i++) {
+			int smaller = 0;
+			for(int j = i + 1; j < facelets.length; j++) {
+				if(facelets[j] / size < facelets[i] / size) smaller++;
+			}
+			rank = (rank * (facelets.length - i)) + smaller;
+		}
+		return rank;
+	}
+
+	// The last piece's orientation always follows from the others
+	private static long ori(int[] facelets, int size) {
+		long ori = 0;
+		for(int i = 0; i < facelets.length - 1; i++) {
+			ori = (ori * size) + (facelets[i] % size);
+		}
+		return ori;
+	}
+
+	private static void unpack(long rank, long ori, int[] facelets, int size) {
+		int n = facelets.length;
+		int[] digits = new int[n];
+		for(int i = n - 1; i >= 0; i--) {
+			digits[i] = (int) (rank % (n - i));
+			rank /= (n - i);
+		}
+		boolean[] used = new boolean[n];
+		int oriSum = 0;
+		for(int i = n - 1; i >= 0; i--) {
+			int o = 0;
+			if(i < n - 1) {
+				o = (int) (ori % size);
+				ori /= size;
+			}
+			facelets[i] = o;
+			oriSum += o;
+		}
+		facelets[n - 1] = (size - (oriSum % size)) % size;
+		for(int i = 0; i < n; i++) {
+			int slot = -1;
+			for(int r = digits[i]; r >= 0; r--) {
+				slot++;
+				while(used[slot]) slot++;
+			}
+			used[slot] = true;
+			facelets[i] += slot * size;
+		}
+	}
+
+	private static Cube.Color[] opposites() {
+		Cube cube = new Cube(false);
+		Cube.Color[] opposites = new Cube.Color[6];
+		for(Cube.Color c : FACES) {
+			for(Cube.Color other : FACES) {
+				if(other != c && !Arrays.asList(cube.faces.get(c).adjs).contains(other)) opposites[c.val] = other;
+			}
+		}
+		return opposites;
+	}
+
+	private static Cube.Spot[] edgeSlots() {
+		Cube cube = new Cube(true);
+		Cube.Color[] sides = cube.faces.get(Cube.WHITE).adjs;
+		Cube.Spot[] slots = new Cube.Spot[12];
+		for(int i = 0; i < 4; i++) {
+			slots[3*i] = cube.spot(Cube.WHITE, sides[i]);
+			slots[(3*i)+1] = cube.spot(Cube.YELLOW, sides[i]);
+			slots[(3*i)+2] = cube.spot(sides[i], sides[(i+1) % 4]);
+		}
+		return slots;
+	}
+
+	private static Cube.Spot[] cornerSlots() {
+		Cube cube = new Cube(true);
+		Cube.Color[] sides = cube.faces.get(Cube.WHITE).adjs;
+		Cube.Spot[] slots = new Cube.Spot[8];
+		for(int i = 0; i < 4; i++) {
+			slots[2*i] = cube.spot(Cube.WHITE, sides[i], sides[(i+1) % 4]);
+			// Listed the other way round so every corner's colors run the same way round it
+			slots[(2*i)+1] = cube.spot(Cube.YELLOW, sides[(i+1) % 4], sides[i]);
+		}
+		return slots;
+	}
+
+	private static int[][] moveTable(Cube.Spot[] slots) {
+		int size = slots[0].colors.size();
+		int[][] table = new int[NUM_MOVES][slots.length * size];
+		for(int m = 0; m < NUM_MOVES; m++) {
+			Cube cube = new Cube(true);
+			apply(cube, m);
+			for(int s = 0; s < slots.length; s++) {
+				Cube.Piece p = cube.pieces.get(slots[s]);
+				int to = slot(slots, p.spot());
+				for(int k = 0; k < size; k++) {
+					Cube.Tile t = p.getTile(slots[s].colors.get(k));
+					table[m][(s * size) + k] = (to * size) + slots[to].colors.indexOf(t.face.color);
+				}
+			}
+		}
+		return table;
+	}
+
+}
@@ -0,0 +1,433 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every state within a fixed number of moves of solved, with its exact
+ * distance, kept as a sorted file of 9-byte records and searched through
+ * a memory mapping.
+ *
+ * A record is the 72-bit number cornerCoord << 45 | edgeCoord << 5 | distance
+ * (see Cubies), written big-endian, so sorting by record sorts by state.
+ * Records are fixed width so they can be binary searched in place; they are
+ * neither compressed nor reduced by symmetry, so every state has its own.
+ *
+ * Sizes and generation cost (half turn metric, one core):
+ *   depth 5       621,649 states    5.6 MB   ~1.5 s   fits in a default heap
+ *   depth 6     8,240,087 states     74 MB    ~14 s   needs about -Xmx500m
+ *   depth 7   109,043,123 states    981 MB   ~3 min   needs about -Xmx3g
+ * Depth 8 would need tens of GB of heap and is out of reach of this generator.
+ *
+ * Generate with: java Endgame [depth] [file]
+ */
+public class Endgame {
+
+	// Generates in a default heap; see the class comment for deeper tables
+	public static final int DEFAULT_DEPTH = 5;
+	public static final int MAX_DEPTH = 31;
+
+	private static final int MAGIC = 0x43554245;
+	private static final int VERSION = 1;
+	private static final int HEADER = 20;
+	private static final int RECORD = 9;
+	private static final long LOW_35 = (1L << 35) - 1;
+	// States of one level expanded at a time, which bounds the scratch arrays
+	private static final int CHUNK = 1 << 20;
+	// Longest solution the cost search tries, and the states it may visit
+	// before settling for the cheapest solution found so far
+	public static final int MAX_LENGTH = 16;
+	public static final int MAX_NODES = 100000;
+
+	private final MappedByteBuffer records;
+	private final int depth;
+	private final long count;
+
+	private Endgame(MappedByteBuffer records, int depth, long count) {
+		this.records = records;
+		this.depth = depth;
+		this.count = count;
+	}
+
+	public static Endgame open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if(channel.size() > Integer.MAX_VALUE) throw new IOException("Endgame file too large to map: " + file);
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) throw new IOException("Not an endgame file: " + file);
+			int depth = buf.getInt(8);
+			long count = buf.getLong(12);
+			if(HEADER + (count * RECORD) != channel.size()) throw new IOException("Truncated endgame file: " + file);
+			return new Endgame(buf, depth, count);
+		} finally {
+			channel.close();
+		}
+	}
+
+	public int depth() {
+		return depth;
+	}
+
+	public long size() {
+		return count;
+	}
+
+	/** Exact distance to solved, or -1 if the state is further away than depth() **/
+	public int distance(int[] corners, int[] edges) {
+		long hi = (Cubies.cornerCoord(corners) << 5) | (Cubies.edgeCoord(edges) >>> 35);
+		long lo = Cubies.edgeCoord(edges) & LOW_35;
+		long min = 0, max = count - 1;
+		while(min <= max) {
+			long mid = (min + max) >>> 1;
+			int at = (int) (HEADER + (mid * RECORD));
+			long midHi = records.getInt(at) & 0xFFFFFFFFL;
+			long midLo = 0;
+			for(int i = 4; i < RECORD; i++) midLo = (midLo << 8) | (records.get(at + i) & 0xFF);
+			int cmp = (midHi != hi) ? Long.compare(midHi, hi) : Long.compare(midLo >>> 5, lo);
+			if(cmp == 0) return (int) (midLo & 31);
+			if(cmp < 0) min = mid + 1;
+			else max = mid - 1;
+		}
+		return -1;
+	}
+
+	public int distance(Cube cube) {
+		int[] corners = new int[8], edges = new int[12];
+		Cubies.read(cube, corners, edges);
+		return distance(corners, edges);
+	}
+
+	public int distance(CubeState state) {
+		int[] corners = new int[8], edges = new int[12];
+		state.corners(corners);
+		state.edges(edges);
+		return distance(corners, edges);
+	}
+
+	/** Moves (see Cubies.face/dir) of an optimal solution, or null if the cube isn't in the table **/
+	public List<Integer> solve(Cube cube) {
+		return solve(cube, TurnCost.HTM);
+	}
+
+	public List<Integer> solve(Cube cube, TurnCost cost) {
+		return solve(cube, cost, Cancel.ON_INTERRUPT);
+	}
+
+	/**
+	 * Cheapest solution under the cost model that stays inside the table,
+	 * which may be longer than the shortest one. The cheapest shortest
+	 * solution sets the first bound. A branch and bound over all moves then
+	 * uses each state's distance times the cheapest turn as its lower bound.
+	 * That bound is weak when some turns are much cheaper than others, so
+	 * the search gives up after MAX_NODES states, or when cancelled, and
+	 * returns the cheapest solution found so far.
+	 */
+	public List<Integer> solve(Cube cube, TurnCost cost, Cancel cancel) {
+		int[] corners = new int[8], edges = new int[12];
+		Cubies.read(cube, corners, edges);
+		int d = distance(corners, edges);
+		if(d < 0) return null;
+
+		int[] path = new int[d];
+		int[] best = new int[d];
+		double[] bestCost = { Double.MAX_VALUE };
+		search(corners, edges, d, null, 0, path, 0, best, bestCost, cost);
+		if(bestCost[0] == Double.MAX_VALUE) return null;
+
+		double min = cost.minCost();
+		if(min > 0) {
+			int maxLength = (int) Math.max(d, Math.min(MAX_LENGTH, (bestCost[0] / min) + 1));
+			Cheaper cheaper = new Cheaper(cost, min, bestCost[0], maxLength, cancel);
+			cheaper.run(corners, edges, d, null, 0, 0);
+			if(cheaper.best != null) best = cheaper.best;
+		}
+
+		List<Integer> moves = new ArrayList<Integer>();
+		for(int m : best) moves.add(m);
+		return moves;
+	}
+
+	private class Cheaper {
+		final TurnCost cost;
+		final double min;
+		final int[] path;
+		final Cancel cancel;
+		double bestCost;
+		int[] best;
+		int nodes;
+		boolean stop;
+
+		Cheaper(TurnCost cost, double min, double bestCost, int maxLength, Cancel cancel) {
+			this.cost = cost;
+			this.min = min;
+			this.bestCost = bestCost;
+			this.path = new int[maxLength];
+			this.cancel = cancel;
+		}
+
+		boolean stopped() {
+			if(!stop) stop = nodes > MAX_NODES || ((nodes & 1023) == 0 && cancel.requested());
+			return stop;
+		}
+
+		void run(int[] corners, int[] edges, int d, Cube.Color prev, int depth, double sofar) {
+			nodes++;
+			if(d == 0) {
+				if(sofar < bestCost) {
+					bestCost = sofar;
+					best = Arrays.copyOf(path, depth);
+				}
+				return;
+			}
+			if(depth == path.length) return;
+			int[] nextCorners = new int[8], nextEdges = new int[12];
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				if(stopped()) return;
+				Cube.Color c = Cubies.face(m);
+				if(c == prev) continue;
+				double g = sofar + cost.cost(prev, c, Cubies.dir(m));
+				if(g >= bestCost) continue;
+				System.arraycopy(corners, 0, nextCorners, 0, 8);
+				System.arraycopy(edges, 0, nextEdges, 0, 12);
+				Cubies.apply(m, nextCorners, nextEdges);
+				int next = distance(nextCorners, nextEdges);
+				if(next < 0 || g + (next * min) >= bestCost) continue;
+				path[depth] = m;
+				run(nextCorners, nextEdges, next, c, depth + 1, g);
+			}
+		}
+	}
+
+	private void search(int[] corners, int[] edges, int d, Cube.Color prev, int depth, int[] path, double sofar, int[] best, double[] bestCost, TurnCost cost) {
+		if(sofar >= bestCost[0]) return;
+		if(d == 0) {
+			System.arraycopy(path, 0, best, 0, depth);
+			bestCost[0] = sofar;
+			return;
+		}
+		int[] nextCorners = new int[8], nextEdges = new int[12];
+		for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+			System.arraycopy(corners, 0, nextCorners, 0, 8);
+			System.arraycopy(edges, 0, nextEdges, 0, 12);
+			Cubies.apply(m, nextCorners, nextEdges);
+			if(distance(nextCorners, nextEdges) != d - 1) continue;
+			path[depth] = m;
+			Cube.Color c = Cubies.face(m);
+			search(nextCorners, nextEdges, d - 1, c, depth + 1, path, sofar + cost.cost(prev, c, Cubies.dir(m)), best, bestCost, cost);
+		}
+	}
+
+	/**
+	 * Breadth-first search from solved, one level at a time. Each level is
+	 * expanded CHUNK states at a time into sorted runs, so scratch space
+	 * stays bounded. Only levels below depth are merged and kept for
+	 * expanding. The runs of the last level are merged straight into the
+	 * file along with the kept levels.
+	 */
+	public static void generate(int depth, File file) throws IOException {
+		if(depth < 0 || depth > MAX_DEPTH) throw new IllegalArgumentException("Endgame depth must be between 0 and " + MAX_DEPTH);
+
+		Cube solved = new Cube(true);
+		int[] corners = new int[8], edges = new int[12];
+		Cubies.read(solved, corners, edges);
+
+		List<long[]> levelCorners = new ArrayList<long[]>();
+		List<long[]> levelEdges = new ArrayList<long[]>();
+		levelCorners.add(new long[]{ Cubies.cornerCoord(corners) });
+		levelEdges.add(new long[]{ Cubies.edgeCoord(edges) });
+		List<long[]> runCorners = new ArrayList<long[]>();
+		List<long[]> runEdges = new ArrayList<long[]>();
+
+		for(int d = 1; d <= depth; d++) {
+			runCorners = new ArrayList<long[]>();
+			runEdges = new ArrayList<long[]>();
+			expand(levelCorners, levelEdges, d, runCorners, runEdges);
+			if(d == depth) break;
+
+			long total = 0;
+			for(long[] run : runCorners) total += run.length;
+			long[] c = new long[(int) total], e = new long[(int) total];
+			int[] tags = new int[runCorners.size()];
+			Merge merge = new Merge(runCorners, runEdges, tags);
+			int n = 0;
+			while(merge.next()) {
+				c[n] = merge.c;
+				e[n] = merge.e;
+				n++;
+			}
+			levelCorners.add(Arrays.copyOf(c, n));
+			levelEdges.add(Arrays.copyOf(e, n));
+		}
+
+		// Every kept level plus the last level's runs, each tagged with its distance
+		List<long[]> sourceCorners = new ArrayList<long[]>(levelCorners);
+		List<long[]> sourceEdges = new ArrayList<long[]>(levelEdges);
+		if(depth > 0) {
+			sourceCorners.addAll(runCorners);
+			sourceEdges.addAll(runEdges);
+		}
+		int[] tags = new int[sourceCorners.size()];
+		for(int i = 0; i < tags.length; i++) tags[i] = Math.min(i, depth);
+
+		long count = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(depth);
+			out.writeLong(0);
+			Merge merge = new Merge(sourceCorners, sourceEdges, tags);
+			while(merge.next()) {
+				long l = (merge.e << 5) | merge.tag;
+				out.writeInt((int) ((merge.c << 5) | (l >>> 40)));
+				for(int b = 32; b >= 0; b -= 8) out.writeByte((int) (l >>> b));
+				count++;
+			}
+		} finally {
+			out.close();
+		}
+
+		RandomAccessFile header = new RandomAccessFile(file, "rw");
+		try {
+			header.seek(12);
+			header.writeLong(count);
+		} finally {
+			header.close();
+		}
+	}
+
+	// Expands level d - 1 into sorted, de-duplicated runs of states not in levels d - 2 or d - 1
+	private static void expand(List<long[]> levelCorners, List<long[]> levelEdges, int d, List<long[]> runCorners, List<long[]> runEdges) {
+		long[] fromC = levelCorners.get(d - 1), fromE = levelEdges.get(d - 1);
+		int size = Math.min(fromC.length, CHUNK) * Cubies.NUM_MOVES;
+		long[] c = new long[size], e = new long[size], tmpC = new long[size], tmpE = new long[size];
+		int[] corners = new int[8], edges = new int[12];
+
+		for(int from = 0; from < fromC.length; from += CHUNK) {
+			int to = Math.min(fromC.length, from + CHUNK);
+			int n = 0;
+			for(int i = from; i < to; i++) {
+				for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+					Cubies.corners(fromC[i], corners);
+					Cubies.edges(fromE[i], edges);
+					Cubies.apply(m, corners, edges);
+					c[n] = Cubies.cornerCoord(corners);
+					e[n] = Cubies.edgeCoord(edges);
+					n++;
+				}
+			}
+			sort(c, e, 0, n, tmpC, tmpE);
+
+			// Neighbours of level d - 1 lie in levels d - 2, d - 1 or d
+			n = unique(c, e, n);
+			n = remove(c, e, n, levelCorners.get(d - 1), levelEdges.get(d - 1));
+			if(d >= 2) n = remove(c, e, n, levelCorners.get(d - 2), levelEdges.get(d - 2));
+			runCorners.add(Arrays.copyOf(c, n));
+			runEdges.add(Arrays.copyOf(e, n));
+		}
+	}
+
+	/** k-way merge of sorted (corner, edge) runs that drops repeats, keeping the lowest tag **/
+	private static class Merge {
+		private final List<long[]> corners, edges;
+		private final int[] tags;
+		private final int[] pos;
+		long c, e;
+		int tag;
+
+		Merge(List<long[]> corners, List<long[]> edges, int[] tags) {
+			this.corners = corners;
+			this.edges = edges;
+			this.tags = tags;
+			this.pos = new int[corners.size()];
+		}
+
+		boolean next() {
+			int best = -1;
+			for(int i = 0; i < pos.length; i++) {
+				if(pos[i] >= corners.get(i).length) continue;
+				if(best < 0) {
+					best = i;
+					continue;
+				}
+				int cmp = compare(corners.get(i)[pos[i]], edges.get(i)[pos[i]], corners.get(best)[pos[best]], edges.get(best)[pos[best]]);
+				if(cmp < 0 || (cmp == 0 && tags[i] < tags[best])) best = i;
+			}
+			if(best < 0) return false;
+			c = corners.get(best)[pos[best]];
+			e = edges.get(best)[pos[best]];
+			tag = tags[best];
+			for(int i = 0; i < pos.length; i++) {
+				long[] ci = corners.get(i), ei = edges.get(i);
+				while(pos[i] < ci.length && ci[pos[i]] == c && ei[pos[i]] == e) pos[i]++;
+			}
+			return true;
+		}
+	}
+
+	private static int compare(long c1, long e1, long c2, long e2) {
+		return (c1 != c2) ? Long.compare(c1, c2) : Long.compare(e1, e2);
+	}
+
+	// Merge sort of (c, e) pairs, so no boxing is needed for millions of states
+	private static void sort(long[] c, long[] e, int from, int to, long[] tmpC, long[] tmpE) {
+		if(to - from < 2) return;
+		int mid = (from + to) >>> 1;
+		sort(c, e, from, mid, tmpC, tmpE);
+		sort(c, e, mid, to, tmpC, tmpE);
+		int i = from, j = mid, k = from;
+		while(i < mid || j < to) {
+			if(j >= to || (i < mid && compare(c[i], e[i], c[j], e[j]) <= 0)) {
+				tmpC[k] = c[i]; tmpE[k] = e[i]; i++;
+			} else {
+				tmpC[k] = c[j]; tmpE[k] = e[j]; j++;
+			}
+			k++;
+		}
+		System.arraycopy(tmpC, from, c, from, to - from);
+		System.arraycopy(tmpE, from, e, from, to - from);
+	}
+
+	private static int unique(long[] c, long[] e, int n) {
+		int out = 0;
+		for(int i = 0; i < n; i++) {
+			if(out == 0 || c[i] != c[out - 1] || e[i] != e[out - 1]) {
+				c[out] = c[i];
+				e[out] = e[i];
+				out++;
+			}
+		}
+		return out;
+	}
+
+	// Drops every pair also found in the sorted (seenC, seenE)
+	private static int remove(long[] c, long[] e, int n, long[] seenC, long[] seenE) {
+		int out = 0, j = 0;
+		for(int i = 0; i < n; i++) {
+			while(j < seenC.length && compare(seenC[j], seenE[j], c[i], e[i]) < 0) j++;
+			if(j < seenC.length && seenC[j] == c[i] && seenE[j] == e[i]) continue;
+			c[out] = c[i];
+			e[out] = e[i];
+			out++;
+		}
+		return out;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+		File file = new File(args.length > 1 ? args[1] : "endgame-" + depth + ".bin");
+		long start = System.currentTimeMillis();
+		generate(depth, file);
+		Endgame table = open(file);
+		System.out.println("Wrote " + table.size() + " states within " + depth + " moves to " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+}
@@ -0,0 +1,156 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Solves seeded random scrambles on every core and reports any scramble
+ * that fails to solve, throws, or runs past the watchdog timeout. Each
+ * failure is printed with its seed so it can be replayed with
+ * Cube.mix(len, new Random(seed)).
+ *
+ * A solve that ignores cancellation for another timeout after being
+ * cancelled is reported as hung, and its worker is abandoned and
+ * replaced so the remaining seeds still run.
+ *
+ * Usage: java Fuzz [count] [threads] [seed] [scrambleLength] [timeoutMillis]
+ */
+public class Fuzz {
+
+	private static final int MAX_REPORTED = 50;
+
+	private final long count;
+	private final long baseSeed;
+	private final int scrambleLength;
+	private final long timeoutMillis;
+
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicLong solved = new AtomicLong();
+	private final AtomicLong unsolved = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+
+	public Fuzz(long count, long baseSeed, int scrambleLength, long timeoutMillis) {
+		this.count = count;
+		this.baseSeed = baseSeed;
+		this.scrambleLength = scrambleLength;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/** One solve in progress; a new Job is published for every seed **/
+	private static class Job {
+		final Solver solver;
+		final long seed;
+		final long startedAt;
+
+		Job(Solver solver, long seed) {
+			this.solver = solver;
+			this.seed = seed;
+			this.startedAt = System.currentTimeMillis();
+		}
+	}
+
+	// Swapped in by the watchdog for a job it has given up on
+	private static final Job ABANDONED = new Job(null, -1);
+
+	private void report(AtomicLong counter, String kind, long seed, String detail) {
+		if(counter.incrementAndGet() <= MAX_REPORTED) {
+			System.out.println(kind + " seed=" + seed + (detail.length() > 0 ? " " + detail : ""));
+		}
+	}
+
+	private class Worker extends Thread {
+		final AtomicReference<Job> current = new AtomicReference<Job>();
+		volatile Job cancelled;
+
+		public void run() {
+			long i;
+			while((i = next.getAndIncrement()) < count) {
+				long s = baseSeed + i;
+				Cube cube = new Cube(true);
+				cube.mix(scrambleLength, new Random(s));
+				cube.getLog().clear();
+				Job job = new Job(new Solver(cube), s);
+				current.set(job);
+
+				boolean ok = false;
+				RuntimeException thrown = null;
+				try {
+					ok = job.solver.solve();
+				} catch(RuntimeException e) {
+					thrown = e;
+				}
+
+				// Lost the race to the watchdog, which has already reported this seed
+				if(!current.compareAndSet(job, null)) return;
+
+				if(thrown != null) {
+					report(errors, "ERROR", s, thrown.toString());
+				} else if(ok) {
+					solved.incrementAndGet();
+				} else if(cancelled == job) {
+					report(timedOut, "TIMEOUT", s, "cancelled after " + timeoutMillis + "ms");
+				} else {
+					Solver.SolverException e = job.solver.getFailure();
+					String why = (e == null) ? "finished unsolved" : e.getMessage();
+					String where = (e == null || e.stage == null) ? "" : "stage=" + e.stage + " ";
+					report(unsolved, "UNSOLVED", s, where + why);
+				}
+			}
+		}
+	}
+
+	public boolean run(int threads) throws InterruptedException {
+		Worker[] workers = new Worker[threads];
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Worker();
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+
+		long start = System.currentTimeMillis();
+		boolean running = true;
+		while(running) {
+			running = false;
+			for(int i = 0; i < threads; i++) {
+				Worker w = workers[i];
+				w.join(100);
+				if(!w.isAlive()) continue;
+				running = true;
+
+				Job job = w.current.get();
+				if(job == null) continue;
+				long elapsed = System.currentTimeMillis() - job.startedAt;
+				if(elapsed > 2 * timeoutMillis && w.current.compareAndSet(job, ABANDONED)) {
+					report(timedOut, "TIMEOUT", job.seed, "hung, ignored cancel for " + timeoutMillis + "ms");
+					workers[i] = new Worker();
+					workers[i].setDaemon(true);
+					workers[i].start();
+				} else if(elapsed > timeoutMillis && w.cancelled != job && w.current.get() == job) {
+					w.cancelled = job;
+					job.solver.cancel();
+				}
+			}
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		long total = solved.get() + unsolved.get() + errors.get() + timedOut.get();
+		System.out.println("Scrambles: " + count + " in " + elapsed + "ms on " + threads + " threads");
+		System.out.println("Solved:    " + solved.get());
+		System.out.println("Unsolved:  " + unsolved.get());
+		System.out.println("Errors:    " + errors.get());
+		System.out.println("Timed out: " + timedOut.get());
+		if(total != count) System.out.println("Lost:      " + (count - total) + " scrambles were never reported");
+		return total == count && solved.get() == count;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		long count = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		int length = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+		long timeout = args.length > 4 ? Long.parseLong(args[4]) : 5000;
+
+		boolean ok = new Fuzz(count, seed, length, timeout).run(threads);
+		System.exit(ok ? 0 : 1);
+	}
+}
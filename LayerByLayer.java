@@ -0,0 +1,58 @@
+/**
+ * The beginner's layer-by-layer method run by Solver: white cross, white
+ * corners, second layer, then the yellow layer.
+ */
+public class LayerByLayer implements Method {
+
+	private final String name;
+	private TurnCost turnCost = TurnCost.HTM;
+	private Endgame endgame;
+	private int stageBudget = Solver.DEFAULT_STAGE_BUDGET;
+	private volatile Solver running;
+
+	public LayerByLayer() {
+		this("lbl");
+	}
+
+	public LayerByLayer(String name) {
+		this.name = name;
+	}
+
+	public LayerByLayer setTurnCost(TurnCost turnCost) {
+		this.turnCost = turnCost;
+		return this;
+	}
+
+	public LayerByLayer setEndgame(Endgame endgame) {
+		this.endgame = endgame;
+		return this;
+	}
+
+	public LayerByLayer setStageBudget(int turns) {
+		this.stageBudget = turns;
+		return this;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public boolean solve(Cube cube) {
+		Solver solver = new Solver(cube);
+		solver.setTurnCost(turnCost);
+		solver.setEndgame(endgame);
+		solver.setStageBudget(stageBudget);
+		running = solver;
+		try {
+			return solver.solve();
+		} finally {
+			running = null;
+		}
+	}
+
+	public void cancel() {
+		Solver solver = running;
+		if(solver != null) solver.cancel();
+	}
+
+}
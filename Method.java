@@ -0,0 +1,20 @@
+/**
+ * A way of solving the cube. Implementations solve in place, leaving their
+ * turns and any stage markers in the cube's log, so methods can be swapped
+ * per solve (see Methods) and compared on the same scrambles (see Compare).
+ *
+ * Every solve marks Solver.LOG_START first and Solver.LOG_END or, if it
+ * fails, is cancelled or throws, Solver.LOG_FAILED last, so a MoveStream
+ * consumer is always released whichever method is used.
+ */
+public interface Method {
+
+	public String name();
+
+	/** True if the cube ends up solved **/
+	public boolean solve(Cube cube);
+
+	/** Asks a running solve to stop and return false; safe to call from any thread. Interrupting the solving thread does the same **/
+	public void cancel();
+
+}
@@ -0,0 +1,21 @@
+import java.util.Arrays;
+
+/**
+ * The methods that can be picked by name, e.g. from the command line.
+ */
+public class Methods {
+
+	/** Stand-in robot: 0.1s quarter turns, half turns 1.6 times that, 0.25s to regrip for the opposite face **/
+	public static final TurnCost ROBOT = TurnCost.timed(0.1, 1.6, 0.25);
+
+	public static final String[] NAMES = { "lbl", "lbl-robot", "two-phase" };
+
+	/** A new instance of the named method **/
+	public static Method get(String name) {
+		if(name.equals("lbl")) return new LayerByLayer();
+		if(name.equals("lbl-robot")) return new LayerByLayer(name).setTurnCost(ROBOT);
+		if(name.equals("two-phase")) return new TwoPhase();
+		throw new IllegalArgumentException("Unknown method: " + name + " (known: " + Arrays.toString(NAMES) + ")");
+	}
+
+}
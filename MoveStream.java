@@ -0,0 +1,50 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hands a cube's turns and solver stage markers to another thread as they
+ * happen, so a controller can start executing a solution while the solver
+ * is still working on later stages.
+ *
+ *   MoveStream stream = new MoveStream(cube);
+ *   // solver thread: new Solver(cube).solve();
+ *   // controller thread:
+ *   for(String entry = stream.take(); !stream.isLast(entry); entry = stream.take()) { ... }
+ */
+public class MoveStream implements Cube.Listener {
+
+	private final BlockingQueue<String> entries = new LinkedBlockingQueue<String>();
+	private final Cube cube;
+
+	public MoveStream(Cube cube) {
+		this.cube = cube;
+		cube.addListener(this);
+	}
+
+	public void turned(Cube.Color c, int dir, String move) {
+		entries.add(move);
+	}
+
+	public void marked(String marker) {
+		entries.add(marker);
+	}
+
+	/** Next move or stage marker, waiting for the solver if it has not made one yet **/
+	public String take() throws InterruptedException {
+		return entries.take();
+	}
+
+	/** True for the marker that ends a solve, whether it succeeded or not **/
+	public boolean isLast(String entry) {
+		return entry.equals(Solver.LOG_END) || entry.equals(Solver.LOG_FAILED);
+	}
+
+	public boolean isMove(String entry) {
+		return cube.isMove(entry);
+	}
+
+	public void close() {
+		cube.removeListener(this);
+	}
+
+}
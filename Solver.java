@@ -1,10 +1,25 @@
 import java.util.ArrayList;
+import java.util.List;
 
 public class Solver {
 
 	public static class SolverException extends Exception {
+		public final String stage;
+
 		public SolverException(String message) {
+			this(message, null);
+		}
+
+		public SolverException(String message, String stage) {
 			super(message);
+			this.stage = stage;
+		}
+	}
+
+	// Thrown out of a stage as soon as the cube reaches a state in the endgame table
+	private static class EndgameReached extends SolverException {
+		public EndgameReached(String stage) {
+			super("Reached endgame table", stage);
 		}
 	}
 	
@@ -25,37 +40,152 @@ public class Solver {
 	public static final String LOG_POSITION_YELLOW_CORNERS = "3_3";
 	public static final String LOG_FIX_YELLOW_CORNERS = "3_4";
 	public static final String LOG_END = "END";
+	public static final String LOG_FAILED = "FAILED";
+
+	public static final String[] STAGES = {
+		LOG_GET_WHITE_CROSS, LOG_FIX_WHITE_CROSS, LOG_GET_WHITE_CORNERS, LOG_GET_SECOND_LAYER,
+		LOG_GET_YELLOW_CROSS, LOG_FIX_YELLOW_CROSS, LOG_POSITION_YELLOW_CORNERS, LOG_FIX_YELLOW_CORNERS
+	};
+
+	// From this stage on, the endgame table is checked after every turn
+	public static final String WATCH_ENDGAME_FROM = LOG_GET_SECOND_LAYER;
+
+	// Max turns any single stage may make before it is abandoned
+	public static final int DEFAULT_STAGE_BUDGET = 200;
 
 	private Cube cube;
+	private int stageBudget = DEFAULT_STAGE_BUDGET;
+	private volatile boolean cancelled;
+	private String stage;
+	private int stageStart;
+	private SolverException failure;
+	private Endgame endgame;
+	private boolean watchEndgame;
+	private TurnCost turnCost = TurnCost.HTM;
+
+	// Lets the cross and endgame searches stop part way through a turn
+	private final Cancel cancel = new Cancel() {
+		public boolean requested() {
+			return cancelled || Thread.currentThread().isInterrupted();
+		}
+	};
 
 	public Solver(Cube cube) {
 		this.cube = cube;
 	}
 
+	public void setStageBudget(int turns) {
+		this.stageBudget = turns;
+	}
+
+	/** What the solver minimizes where it has a choice of moves; defaults to move count **/
+	public void setTurnCost(TurnCost turnCost) {
+		this.turnCost = turnCost;
+	}
+
+	/**
+	 * Once the cube is within the endgame table's reach, finish with its
+	 * optimal moves. The table is checked at every stage boundary, and after
+	 * every turn from WATCH_ENDGAME_FROM on.
+	 */
+	public void setEndgame(Endgame endgame) {
+		this.endgame = endgame;
+	}
+
+	/** Asks a running solve to stop at its next turn; safe to call from any thread. The next solve() starts afresh **/
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** Why the last solve() returned false, or null if it didn't throw **/
+	public SolverException getFailure() {
+		return failure;
+	}
+
 	public boolean solve() {
+		failure = null;
+		stage = null;
+		cancelled = false;
+		watchEndgame = false;
+		boolean finished = false;
 		try {
-			cube.log(LOG_START);
-			cube.log(LOG_GET_WHITE_CROSS);
-			getWhiteCross();
-			cube.log(LOG_FIX_WHITE_CROSS);
-			fixWhiteCross();
-			cube.log(LOG_GET_WHITE_CORNERS);
-			getWhiteCorners();
-			cube.log(LOG_GET_SECOND_LAYER);
-			getSecondLayer();
-			cube.log(LOG_GET_YELLOW_CROSS);
-			getYellowCross();
-			cube.log(LOG_FIX_YELLOW_CROSS);
-			fixYellowCross();
-			cube.log(LOG_POSITION_YELLOW_CORNERS);
-			positionYellowCorners();
-			cube.log(LOG_FIX_YELLOW_CORNERS);
-			fixYellowCorners();
-			cube.log(LOG_END);
+			cube.mark(LOG_START);
+			for(String next : STAGES) {
+				startStage(next);
+				if(finishFromEndgame()) break;
+				try {
+					runStage(next);
+				} catch(EndgameReached e) {
+					finishFromEndgame();
+					break;
+				}
+			}
+			cube.mark(LOG_END);
+			finished = true;
 			return isSolved();
 		} catch(SolverException e) {
+			failure = e;
 			return false;
-		}		
+		} finally {
+			// Also on runtime exceptions, so stream consumers are never left waiting
+			if(!finished) cube.mark(LOG_FAILED);
+		}
+	}
+
+	private void runStage(String stage) throws SolverException {
+		if(stage.equals(LOG_GET_WHITE_CROSS)) getWhiteCross();
+		else if(stage.equals(LOG_FIX_WHITE_CROSS)) fixWhiteCross();
+		else if(stage.equals(LOG_GET_WHITE_CORNERS)) getWhiteCorners();
+		else if(stage.equals(LOG_GET_SECOND_LAYER)) getSecondLayer();
+		else if(stage.equals(LOG_GET_YELLOW_CROSS)) getYellowCross();
+		else if(stage.equals(LOG_FIX_YELLOW_CROSS)) fixYellowCross();
+		else if(stage.equals(LOG_POSITION_YELLOW_CORNERS)) positionYellowCorners();
+		else if(stage.equals(LOG_FIX_YELLOW_CORNERS)) fixYellowCorners();
+	}
+
+	private boolean finishFromEndgame() throws SolverException {
+		if(endgame == null) return false;
+		List<Integer> moves = endgame.solve(cube, turnCost, cancel);
+		if(moves == null) return false;
+		for(int move : moves) {
+			checkBudget();
+			Cubies.apply(cube, move);
+		}
+		return true;
+	}
+
+	private void startStage(String stage) throws SolverException {
+		checkBudget();
+		cube.mark(stage);
+		this.stage = stage;
+		this.stageStart = cube.getLog().size();
+		if(stage.equals(WATCH_ENDGAME_FROM)) watchEndgame = (endgame != null);
+	}
+
+	private void rotate(Cube.Color c, int dir) throws SolverException {
+		cube.rotate(c, dir);
+		afterTurn();
+	}
+
+	private void execute(String[] moves, Cube.Color front) throws SolverException {
+		for(String move : moves) {
+			cube.execute(new String[]{ move }, front);
+			afterTurn();
+		}
+	}
+
+	private void afterTurn() throws SolverException {
+		if(watchEndgame && endgame.distance(cube) >= 0) throw new EndgameReached(stage);
+	}
+
+	/** Called from every loop that turns the cube, so no stage can spin forever **/
+	private void checkBudget() throws SolverException {
+		if(cancel.requested()) {
+			throw new SolverException("Solve cancelled", stage);
+		}
+		if(stage != null && cube.getLog().size() - stageStart > stageBudget) {
+			throw new SolverException("Stage " + stage + " exceeded budget of " + stageBudget + " turns", stage);
+		}
 	}
 
 	private Cube.Spot[] edges(Cube.Color c) {
@@ -113,62 +243,80 @@ public class Solver {
 		return true;
 	}
 
+	/** Turns face c the given number of quarter turns clockwise, in whichever way is cheapest **/
+	private void turn(Cube.Color c, int quarters) throws SolverException {
+		checkBudget();
+		for(int dir : turnCost.cheapest(lastTurned(), c, quarters)) rotate(c, dir);
+	}
+
+	private Cube.Color lastTurned() {
+		ArrayList<String> log = cube.getLog();
+		for(int i = log.size() - 1; i >= 0; i--) {
+			if(cube.isMove(log.get(i))) return TurnCost.face(log.get(i));
+		}
+		return null;
+	}
+
+	/** Clockwise quarter turns of face that carry p into target **/
+	private int quartersTo(Cube.Color face, Cube.Piece p, Cube.Spot target) throws SolverException {
+		Cube.Tile[] tiles = p.getTiles();
+		for(int q = 0; q < 4; q++) {
+			Cube.Color[] at = new Cube.Color[tiles.length];
+			for(int i = 0; i < tiles.length; i++) {
+				Cube.Color f = tiles[i].face.color;
+				at[i] = (f == face) ? f : cube.faces.get(face).nextColor(f, q);
+			}
+			if(cube.spot(at).equals(target)) return q;
+		}
+		throw new SolverException("Turning " + face + " can't bring " + p + " to " + target, stage);
+	}
+
+	/** Cheapest clockwise quarter turns of face that leave at least two of its cross edges fixed **/
+	private int quartersToAlign(Cube.Color face) throws SolverException {
+		int best = -1;
+		double bestCost = 0;
+		for(int q = 0; q < 4; q++) {
+			int num = 0;
+			for(Cube.Spot spot : edges(face)) {
+				Cube.Piece p = cube.pieces.get(spot);
+				Cube.Color side = p.otherColor(face);
+				if(p.getTile(face).facing(face) && cube.faces.get(face).nextColor(p.otherFace(face).color, q) == side) num++;
+			}
+			if(num < 2) continue;
+			double c = turnCost.cheapestCost(lastTurned(), face, q);
+			if(best < 0 || c < bestCost) {
+				best = q;
+				bestCost = c;
+			}
+		}
+		if(best < 0) throw new SolverException("Could not align " + face + " cross", stage);
+		return best;
+	}
+
 	public boolean isSolved() {
 		return (checkFirstLayer() && checkSecondLayer() && checkThirdLayer());
 	}
 	
 	/** FIRST LAYER **/
 
-	public void getWhiteCross() {
-		for(Cube.Spot edge : edges(WHITE)) {
-			Cube.Piece pTarget = cube.pieces.get(edge);
-			Cube.Color sideColor, whiteSideColor, otherSideColor;
-			switch(pTarget.layer()) {
-				case 1:
-					if(pTarget.getTile(WHITE).facing(WHITE)) {
-						// do nothing
-					} else {
-						sideColor = pTarget.otherFace(WHITE).color;
-						cube.rotate(sideColor, cube.CW);
-						otherSideColor = pTarget.otherFace(sideColor).color;
-						while(cube.at(WHITE, otherSideColor).getTile(WHITE) != null) cube.rotate(WHITE, cube.CW); 
-						cube.rotate(otherSideColor, cube.CW);
-					}
-					break;
-				case 2:
-					whiteSideColor = pTarget.getTile(WHITE).face.color;
-					otherSideColor = pTarget.otherFace(whiteSideColor).color;
-					while(cube.at(WHITE, otherSideColor).getTile(WHITE) != null) cube.rotate(WHITE, cube.CW);
-					int dirToRotate = cube.faces.get(WHITE).relativeDir(otherSideColor, whiteSideColor);
-					cube.rotate(otherSideColor, dirToRotate);
-					break;
-				case 3:
-					if(pTarget.getTile(WHITE).facing(YELLOW)) {
-						otherSideColor = pTarget.otherFace(YELLOW).color;
-						while(cube.at(WHITE, otherSideColor).getTile(WHITE) != null) cube.rotate(WHITE, cube.CW);
-						cube.rotate(otherSideColor, cube.DBL_CW);
-					} else {
-						sideColor = pTarget.getTile(WHITE).face.color;
-						while(cube.at(WHITE, sideColor).getTile(WHITE) != null) cube.rotate(WHITE, cube.CW);
-						cube.rotate(sideColor, cube.CW);
-						cube.rotate(WHITE, cube.CW);	
-						otherSideColor = pTarget.otherFace(sideColor).color;
-						cube.rotate(otherSideColor, cube.CCW);
-					}
-					break;
-			}
+	public void getWhiteCross() throws SolverException {
+		List<Integer> moves = CrossTable.solve(cube, turnCost, cancel);
+		checkBudget();
+		for(int move : moves) {
+			checkBudget();
+			Cubies.apply(cube, move);
 		}
 	}
 
 	public void fixWhiteCross() throws SolverException {
-		if(!checkCross(WHITE, false)) throw new SolverException("Attempting to fix white cross before white cross is gotten");
+		if(!checkCross(WHITE, false)) throw new SolverException("Attempting to fix white cross before white cross is gotten", stage);
 
 		int tries = 0;
 		while(tries < 4 && numFixed(WHITE, Cube.Type.EDGE) < 2) {
-			cube.rotate(WHITE, Cube.CW);
+			rotate(WHITE, Cube.CW);
 			tries++;
 		}
-		if(tries == 4) throw new SolverException("Could not align white cross");
+		if(tries == 4) throw new SolverException("Could not align white cross", stage);
 		
 		if(numFixed(WHITE, Cube.Type.EDGE) == 4) return;
 
@@ -184,20 +332,21 @@ public class Solver {
 			}
 		}
 
-		cube.rotate(c1, Cube.CW);
+		rotate(c1, Cube.CW);
 		int c2Toc1 = cube.faces.get(WHITE).relativeDir(c2, c1);
-		cube.rotate(WHITE, c2Toc1);
-		cube.rotate(c1, Cube.CCW);
+		rotate(WHITE, c2Toc1);
+		rotate(c1, Cube.CCW);
 		int c1Toc2 = -1 * c2Toc1;
-		cube.rotate(WHITE, c1Toc2);
-		cube.rotate(c1, Cube.CW);
+		rotate(WHITE, c1Toc2);
+		rotate(c1, Cube.CW);
 	}
 
 	public void getWhiteCorners() throws SolverException {
-		if(!checkCross(WHITE, true)) throw new SolverException("Attempting to start white corners when white cross isn't solved");	
+		if(!checkCross(WHITE, true)) throw new SolverException("Attempting to start white corners when white cross isn't solved", stage);	
 
 		Cube.Color whiteSideColor, otherSideColor, sideColor;
 		for(Cube.Spot corner : corners(WHITE)) {
+			checkBudget();
 			Cube.Piece pTarget = cube.pieces.get(corner);
 			switch(pTarget.layer()) {
 				case 1:
@@ -208,13 +357,13 @@ public class Solver {
 							whiteSideColor = pTarget.getTile(WHITE).face.color;
 							otherSideColor = pTarget.otherFace(WHITE, whiteSideColor).color;
 							int up = cube.faces.get(whiteSideColor).relativeDir(otherSideColor, YELLOW);
-							cube.rotate(whiteSideColor, up);
+							rotate(whiteSideColor, up);
 							int away = cube.faces.get(YELLOW).relativeDir(whiteSideColor, otherSideColor);
-							cube.rotate(YELLOW, away);
+							rotate(YELLOW, away);
 							int down = -1 * up;
-							cube.rotate(whiteSideColor, down);
+							rotate(whiteSideColor, down);
 							int towards = -1 * away;
-							cube.rotate(YELLOW, towards);
+							rotate(YELLOW, towards);
 						}
 					} else {
 						sideColor = pTarget.getTile(WHITE).face.color;
@@ -222,11 +371,11 @@ public class Solver {
 						if(sideColor == WHITE) sideColor = pTarget.getTile(pTarget.otherColors(WHITE)[0]).face.color;
 						otherSideColor = pTarget.otherFace(WHITE, sideColor).color;
 						int up = cube.faces.get(sideColor).relativeDir(otherSideColor, YELLOW);
-						cube.rotate(sideColor, up);
+						rotate(sideColor, up);
 						int away = cube.faces.get(YELLOW).relativeDir(sideColor, otherSideColor);
-						cube.rotate(YELLOW, away);
+						rotate(YELLOW, away);
 						int down = -1 * up;
-						cube.rotate(sideColor, down);
+						rotate(sideColor, down);
 					}
 				case 3:
 					// Get into corresponding third layer spot
@@ -234,18 +383,16 @@ public class Solver {
 					int leftSideIdx = cube.faces.get(WHITE).relativeDir(nonWhite[0], nonWhite[1]) == Cube.CW ? 0 : 1;
 					Cube.Color leftSide = nonWhite[leftSideIdx], rightSide = nonWhite[1 - leftSideIdx];
 					Cube.Spot targetSpot = cube.spot(YELLOW, leftSide, rightSide);
-					while(!pTarget.spot().equals(targetSpot)) {
-						cube.rotate(YELLOW, Cube.CW);
-					}
+					turn(YELLOW, quartersTo(YELLOW, pTarget, targetSpot));
 					if(pTarget.getTile(WHITE).facing(YELLOW)) {
 						// Get white tile facing side
-						cube.execute(new String[]{ "F", "UU", "F'", "U'" }, rightSide);
+						execute(new String[]{ "F", "UU", "F'", "U'" }, rightSide);
 					}
 
 					if(pTarget.getTile(WHITE).facing(rightSide)) {
-						cube.execute(new String[]{ "F", "U", "F'" }, rightSide);
+						execute(new String[]{ "F", "U", "F'" }, rightSide);
 					} else {
-						cube.execute(new String[]{ "F'", "U'", "F"}, leftSide);
+						execute(new String[]{ "F'", "U'", "F"}, leftSide);
 					}
 					break;
 			}
@@ -268,12 +415,13 @@ public class Solver {
 	}
 
 	public void getSecondLayer() throws SolverException {
-		if(!checkFirstLayer()) throw new SolverException("Attempting to get second layer before getting first layer");
+		if(!checkFirstLayer()) throw new SolverException("Attempting to get second layer before getting first layer", stage);
 
 		String[] frAlgo = new String[]{ "R", "U'", "R'", "U'", "F'", "U", "F" };
 		String[] flAlgo = new String[]{ "L'", "U", "L", "U", "F", "U'", "F'" };
 
 		for(Cube.Spot edge : l2Edges()) {
+			checkBudget();
 			Cube.Piece pTarget = cube.pieces.get(edge);
 			switch(pTarget.layer()) {
 				case 2:
@@ -284,17 +432,17 @@ public class Solver {
 						sides[0] = pTarget.getTiles()[0].face.color;
 						sides[1] = pTarget.getTiles()[1].face.color;
 						Cube.Color front = cube.faces.get(WHITE).relativeDir(sides[0], sides[1]) == Cube.CW ? sides[0] : sides[1];
-						cube.execute(frAlgo, front);
+						execute(frAlgo, front);
 					}
 				case 3:
 					Cube.Color topColor = pTarget.getTile(cube.faces.get(YELLOW)).color;
 					Cube.Spot targetSpot = cube.spot(YELLOW, cube.faces.get(YELLOW).nextColor(topColor, Cube.DBL_CW));
-					while(!pTarget.spot().equals(targetSpot)) cube.rotate(YELLOW, Cube.CW);
+					turn(YELLOW, quartersTo(YELLOW, pTarget, targetSpot));
 					Cube.Color front = pTarget.otherColor(topColor);
 					if(cube.faces.get(WHITE).relativeDir(front, topColor) == Cube.CW) {
-						cube.execute(frAlgo, front);
+						execute(frAlgo, front);
 					} else {
-						cube.execute(flAlgo, front);
+						execute(flAlgo, front);
 					}
 					break;
 			}
@@ -311,11 +459,12 @@ public class Solver {
 	/** THIRD LAYER **/
 
 	public void getYellowCross() throws SolverException {
-		if(!(checkFirstLayer() && checkSecondLayer())) throw new SolverException("Attempting to get yellow cross before first and second layers gotten");
+		if(!(checkFirstLayer() && checkSecondLayer())) throw new SolverException("Attempting to get yellow cross before first and second layers gotten", stage);
 		Cube.Color[] sides = cube.faces.get(YELLOW).adjs;
 		Cube.Color f = sides[0], l = sides[1], b = sides[2], r = sides[3];
 		Cube.Color front;
 		while(!checkCross(YELLOW, false)) {
+			checkBudget();
 			if(cube.at(YELLOW, f).getTile(YELLOW).facing(YELLOW)) {
 				front = (cube.at(YELLOW, l).getTile(YELLOW).facing(YELLOW) || cube.at(YELLOW, b).getTile(YELLOW).facing(YELLOW)) ?
 							r : b;
@@ -323,20 +472,21 @@ public class Solver {
 				front = (cube.at(YELLOW, l).getTile(YELLOW).facing(YELLOW)) ?
 							f : l;
 			}
-			cube.execute(new String[]{ "F", "R", "U", "R'", "U'", "F'" }, front);
+			execute(new String[]{ "F", "R", "U", "R'", "U'", "F'" }, front);
 		}
 	}
 
 	public void fixYellowCross() throws SolverException {
-		if(!checkCross(YELLOW, false)) throw new SolverException("Attempting to fix yellow cross before getting yellow cross");
+		if(!checkCross(YELLOW, false)) throw new SolverException("Attempting to fix yellow cross before getting yellow cross", stage);
 		while(!checkCross(YELLOW, true)) {
-			while(numFixed(YELLOW, Cube.Type.EDGE) < 2) cube.rotate(YELLOW, Cube.CW);
+			checkBudget();
+			turn(YELLOW, quartersToAlign(YELLOW));
 			if(checkCross(YELLOW, true)) break;
 
 			Cube.Color[] sides = cube.faces.get(YELLOW).adjs;
 			for(int i = 0; i < 4; i++) {
 				if(!isFixed(cube.at(YELLOW, sides[(i+1) % 4])) && isFixed(cube.at(YELLOW, sides[(i+2) % 4]))) {
-					cube.execute(new String[] { "R", "U", "R'", "U", "R", "UU", "R'" }, sides[i]);
+					execute(new String[] { "R", "U", "R'", "U", "R", "UU", "R'" }, sides[i]);
 					break;
 				}
 			}
@@ -344,8 +494,9 @@ public class Solver {
 	}
 
 	public void positionYellowCorners() throws SolverException {
-		if(!checkCross(YELLOW, true)) throw new SolverException("Attempting to position yellow corners before yellow cross is fixed");
+		if(!checkCross(YELLOW, true)) throw new SolverException("Attempting to position yellow corners before yellow cross is fixed", stage);
 		while(numPositioned(YELLOW, Cube.Type.CORNER) < 4) {
+			checkBudget();
 			Cube.Color[] sides = cube.faces.get(YELLOW).adjs;
 			Cube.Color front = sides[0];
 			for(int i = 1; i < 4; i++) {
@@ -355,12 +506,12 @@ public class Solver {
 					break;
 				}
 			}
-			cube.execute(new String[]{ "U", "R", "U'", "L'", "U", "R'", "U'", "L" }, front);
+			execute(new String[]{ "U", "R", "U'", "L'", "U", "R'", "U'", "L" }, front);
 		}
 	}
 
 	public void fixYellowCorners() throws SolverException {
-		if(numPositioned(YELLOW, Cube.Type.CORNER) != 4) throw new SolverException("Attempting to fix yellow corners before yellow corners are positioned");
+		if(numPositioned(YELLOW, Cube.Type.CORNER) != 4) throw new SolverException("Attempting to fix yellow corners before yellow corners are positioned", stage);
 		if(numFixed(YELLOW, Cube.Type.CORNER) == 4) return;
 		Cube.Color[] sides = cube.faces.get(YELLOW).adjs;
 		Cube.Color f = sides[1], r = sides[0];
@@ -370,9 +521,10 @@ public class Solver {
 		}
 		for(int i = 0; i < 4; i++) {
 			while(!cube.at(YELLOW, f, r).getTile(YELLOW).facing(YELLOW)) {
-				for(int j = 0; j < 2; j++) cube.execute(new String[]{ "R'", "D'", "R", "D" }, f);
+				checkBudget();
+				for(int j = 0; j < 2; j++) execute(new String[]{ "R'", "D'", "R", "D" }, f);
 			}
-			cube.rotate(YELLOW, Cube.CW);
+			rotate(YELLOW, Cube.CW);
 		}
 	}
 
@@ -0,0 +1,123 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class StateTest {
+
+	private static int failures = 0;
+
+	private static void check(boolean ok, String what) {
+		if(!ok) {
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		Random rand = new Random(42);
+
+		System.out.println("Round-trip " + count + " scrambles through CubeState, coordinates and bytes");
+		ByteBuffer buf = ByteBuffer.allocate(CubeState.BYTES);
+		for(int i = 0; i < count; i++) {
+			Cube cube = new Cube(true);
+			cube.mix(30, new Random(i));
+			CubeState state = CubeState.of(cube);
+
+			check(state.toCube().toString().equals(cube.toString()), "toCube for seed " + i);
+			check(CubeState.of(state.toCube()).equals(state), "of(toCube) for seed " + i);
+			check(CubeState.fromCoords(state.cornerCoord(), state.edgeCoord()).equals(state), "coordinates for seed " + i);
+			check(CubeState.fromBytes(state.toBytes()).equals(state), "bytes for seed " + i);
+			buf.clear();
+			state.write(buf);
+			buf.flip();
+			check(CubeState.read(buf).equals(state) && !buf.hasRemaining(), "buffer for seed " + i);
+			check(CubeState.cornerCoord(buf, 0) == state.cornerCoord() && CubeState.edgeCoord(buf, 0) == state.edgeCoord(), "stored coordinates for seed " + i);
+
+			int move = rand.nextInt(Cubies.NUM_MOVES);
+			Cubies.apply(cube, move);
+			check(CubeState.of(cube).equals(state.apply(move)), "apply for seed " + i);
+		}
+
+		int entries = Math.max(count, 200);
+		System.out.println("Round-trip " + entries + " scrambles and their moves through a corpus file");
+		File file = File.createTempFile("statetest", ".corpus");
+		file.deleteOnExit();
+		CubeState[] states = new CubeState[entries];
+		Corpus.Writer writer = new Corpus.Writer(file, true, 64);
+		try {
+			for(int i = 0; i < entries; i++) {
+				Cube cube = new Cube(true);
+				cube.mix(15, new Random(i));
+				// Markers aren't moves and are dropped
+				cube.mark(Solver.LOG_START);
+				cube.mix(15, new Random(-i));
+				states[i] = CubeState.of(cube);
+				writer.add(states[i], cube.getLog());
+			}
+		} finally {
+			writer.close();
+		}
+
+		Corpus.Reader reader = new Corpus.Reader(file);
+		try {
+			check(reader.size() == entries && reader.blocks() == (entries + 63) / 64 && reader.hasMoves(), "corpus header");
+			int i = 0;
+			byte[] bytes = new byte[CubeState.BYTES];
+			for(int b = 0; b < reader.blocks(); b++) {
+				Corpus.Block block = reader.block(b);
+				for(int k = 0; k < block.size(); k++, i++) {
+					CubeState state = states[i];
+					check(block.state(k).equals(state), "corpus state " + i);
+					check(block.cornerCoord(k) == state.cornerCoord() && block.edgeCoord(k) == state.edgeCoord(), "corpus coordinates " + i);
+					block.bytes(k, bytes, 0);
+					check(Arrays.equals(bytes, state.toBytes()), "corpus bytes " + i);
+
+					List<String> moves = block.moves(k);
+					Cube replay = new Cube(true);
+					for(String move : moves) replay.rotate(TurnCost.face(move), TurnCost.dir(move));
+					check(moves.size() == 30 && CubeState.of(replay).equals(state), "corpus moves " + i);
+				}
+			}
+			check(i == entries, "corpus count");
+		} finally {
+			reader.close();
+		}
+
+		System.out.println("Corrupt one byte of the first block");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// Past the 32-byte header and the block's entry count, inside the first state
+			raf.seek(32 + 4 + 5);
+			int b = raf.read();
+			raf.seek(32 + 4 + 5);
+			raf.write(b ^ 0x10);
+		} finally {
+			raf.close();
+		}
+		reader = new Corpus.Reader(file);
+		try {
+			boolean threw = false;
+			try {
+				reader.block(0);
+			} catch(IOException e) {
+				threw = e.getMessage().startsWith("Checksum mismatch");
+			}
+			check(threw, "corrupted block read without a checksum error");
+			check(reader.block(1).state(0).equals(states[64]), "block after the corrupted one");
+		} finally {
+			reader.close();
+		}
+
+		if(failures == 0) {
+			System.out.println("All checks passed");
+		} else {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+	}
+}
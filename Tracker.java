@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Follows a planned solution as it is executed, and works out how to get
+ * back on track when the cube is turned off the plan part way through
+ * (a robot slips, or someone adds a few turns) without solving again.
+ *
+ * A patch is the cheaper, under the turn cost model, of:
+ *   - undoing the extra turns and carrying on with the rest of the plan, or
+ *   - a short search from the current state to any later state on the plan,
+ *     followed by the plan from that point.
+ *
+ * After executing a patch, track it with new Tracker(current, patch).
+ */
+public class Tracker {
+
+	public static final int DEFAULT_SEARCH_DEPTH = 4;
+
+	private final List<String> plan;
+	// states[k] is the state just before plan entry k is executed
+	private final CubeState[] states;
+	// For each state on the plan, the furthest entry it is reached at
+	private final HashMap<CubeState, Integer> index;
+	private TurnCost turnCost = TurnCost.HTM;
+	private int searchDepth = DEFAULT_SEARCH_DEPTH;
+
+	public Tracker(CubeState start, List<String> plan) {
+		this.plan = new ArrayList<String>(plan);
+		this.states = new CubeState[plan.size() + 1];
+		this.index = new HashMap<CubeState, Integer>();
+		states[0] = start;
+		index.put(start, 0);
+		for(int i = 0; i < plan.size(); i++) {
+			states[i+1] = apply(states[i], plan.get(i));
+			index.put(states[i+1], i+1);
+		}
+	}
+
+	public void setTurnCost(TurnCost turnCost) {
+		this.turnCost = turnCost;
+	}
+
+	public void setSearchDepth(int depth) {
+		this.searchDepth = depth;
+	}
+
+	/** State the cube should be in once the first position plan entries are executed **/
+	public CubeState planned(int position) {
+		return states[position];
+	}
+
+	private static CubeState apply(CubeState state, String entry) {
+		Cube.Color c = TurnCost.face(entry);
+		return (c == null) ? state : state.apply(c, TurnCost.dir(entry));
+	}
+
+	/**
+	 * Moves to execute instead of the plan from position on, given the turns
+	 * observed on top of the plan after its first position entries.
+	 */
+	public List<String> patch(int position, List<String> observed) {
+		CubeState current = states[position];
+		for(String entry : observed) current = apply(current, entry);
+
+		List<String> undo = new ArrayList<String>();
+		for(int i = observed.size() - 1; i >= 0; i--) {
+			if(TurnCost.face(observed.get(i)) != null) undo.add(Cube.inverseMove(observed.get(i)));
+		}
+		undo.addAll(plan.subList(position, plan.size()));
+
+		Patch best = new Patch();
+		best.offer(Cube.compress(undo, turnCost), turnCost);
+		search(current, position, null, new int[searchDepth], 0, best);
+		return best.moves;
+	}
+
+	private static class Patch {
+		List<String> moves;
+		double cost;
+
+		void offer(List<String> candidate, TurnCost turnCost) {
+			double c = turnCost.estimate(candidate);
+			if(moves == null || c < cost) {
+				moves = candidate;
+				cost = c;
+			}
+		}
+	}
+
+	private void search(CubeState state, int position, Cube.Color prev, int[] path, int depth, Patch best) {
+		Integer at = index.get(state);
+		if(at != null && at >= position) {
+			List<String> candidate = new ArrayList<String>();
+			for(int i = 0; i < depth; i++) candidate.add(Cube.moveName(Cubies.face(path[i]), Cubies.dir(path[i])));
+			candidate.addAll(plan.subList(at, plan.size()));
+			best.offer(Cube.compress(candidate, turnCost), turnCost);
+		}
+		if(depth == path.length) return;
+
+		for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+			Cube.Color c = Cubies.face(m);
+			// Skip sequences that have a shorter equivalent: same face twice, or opposite faces in both orders
+			if(c == prev) continue;
+			if(prev != null && c == Cubies.opposite(prev) && c.val < prev.val) continue;
+			path[depth] = m;
+			search(state.apply(m), position, c, path, depth + 1, best);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrackerTest {
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		Random rand = new Random(42);
+		int failures = 0;
+
+		System.out.println("Perturb " + count + " half-executed solutions and patch them");
+		double patched = 0, remaining = 0;
+		for(int i = 0; i < count; i++) {
+			Cube cube = new Cube(true);
+			cube.mix(30, new Random(i));
+			cube.getLog().clear();
+			CubeState start = CubeState.of(cube);
+			new Solver(cube).solve();
+			List<String> plan = new ArrayList<String>(cube.getLog());
+			Tracker tracker = new Tracker(start, plan);
+
+			int position = rand.nextInt(plan.size() + 1);
+			List<String> observed = new ArrayList<String>();
+			int extra = 1 + rand.nextInt(3);
+			for(int j = 0; j < extra; j++) {
+				observed.add(Cube.moveName(Cubies.FACES[rand.nextInt(6)], Cubies.DIRS[rand.nextInt(3)]));
+			}
+
+			Cube robot = tracker.planned(position).toCube();
+			for(String move : observed) robot.rotate(TurnCost.face(move), TurnCost.dir(move));
+			List<String> patch = tracker.patch(position, observed);
+			for(String move : patch) {
+				if(TurnCost.face(move) != null) robot.rotate(TurnCost.face(move), TurnCost.dir(move));
+			}
+			if(!CubeState.of(robot).isSolved()) {
+				failures++;
+				System.out.println("FAILED: patch for seed " + i + " at " + position + " after " + observed);
+			}
+
+			patched += TurnCost.HTM.estimate(patch);
+			remaining += TurnCost.HTM.estimate(plan.subList(position, plan.size())) + extra;
+		}
+		System.out.println("Patch moves: " + patched + ", undo and carry on: " + remaining);
+
+		if(failures == 0) {
+			System.out.println("All patches solved the cube");
+		} else {
+			System.out.println(failures + " patches failed");
+			System.exit(1);
+		}
+	}
+}
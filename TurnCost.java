@@ -0,0 +1,169 @@
+import java.util.List;
+
+/**
+ * What a turn costs, so solutions can be chosen for how long they take to
+ * execute rather than how many moves they have. The cost of a turn may
+ * depend on the face turned just before it (null for the first turn).
+ *
+ * Moves are named as in Cube's log: "W" clockwise, "W'" counterclockwise
+ * and "WW" a half turn.
+ */
+public abstract class TurnCost {
+
+	public abstract double cost(Cube.Color prev, Cube.Color c, int dir);
+
+	/** Half turn metric: every turn costs 1 **/
+	public static final TurnCost HTM = new TurnCost() {
+		public double cost(Cube.Color prev, Cube.Color c, int dir) {
+			return 1;
+		}
+	};
+
+	/** Quarter turn metric: half turns cost 2 **/
+	public static final TurnCost QTM = new TurnCost() {
+		public double cost(Cube.Color prev, Cube.Color c, int dir) {
+			return (dir == Cube.DBL_CW || dir == Cube.DBL_CCW) ? 2 : 1;
+		}
+	};
+
+	/** Slice turn metric; Cube has no slice turns, so this counts the same as HTM **/
+	public static final TurnCost STM = HTM;
+
+	/**
+	 * Per-face turn times plus a time for every switch from one face to another.
+	 */
+	public static class Table extends TurnCost {
+		private final double[] quarter = new double[6];
+		private final double[] half = new double[6];
+		private final double[][] transition = new double[6][6];
+
+		/** Turn times must be positive, or the searches' cost bounds are useless **/
+		public Table(double quarterTime, double halfTime) {
+			checkTimes(quarterTime, halfTime);
+			for(int i = 0; i < 6; i++) {
+				quarter[i] = quarterTime;
+				half[i] = halfTime;
+			}
+		}
+
+		public Table setFace(Cube.Color c, double quarterTime, double halfTime) {
+			checkTimes(quarterTime, halfTime);
+			quarter[c.val] = quarterTime;
+			half[c.val] = halfTime;
+			return this;
+		}
+
+		public Table setTransition(Cube.Color from, Cube.Color to, double time) {
+			if(!(time >= 0)) throw new IllegalArgumentException("Transition time must not be negative: " + time);
+			transition[from.val][to.val] = time;
+			return this;
+		}
+
+		private static void checkTimes(double quarterTime, double halfTime) {
+			if(!(quarterTime > 0) || !(halfTime > 0)) throw new IllegalArgumentException("Turn times must be positive: " + quarterTime + ", " + halfTime);
+		}
+
+		public double cost(Cube.Color prev, Cube.Color c, int dir) {
+			double t = (dir == Cube.DBL_CW || dir == Cube.DBL_CCW) ? half[c.val] : quarter[c.val];
+			if(prev != null) t += transition[prev.val][c.val];
+			return t;
+		}
+	}
+
+	/**
+	 * A robot whose half turns take halfFactor times a quarter turn, and
+	 * which has to regrip when going from a face to the opposite one.
+	 */
+	public static TurnCost timed(double quarterTime, double halfFactor, double regripTime) {
+		Table t = new Table(quarterTime, quarterTime * halfFactor);
+		for(Cube.Color c : Cubies.FACES) t.setTransition(c, Cubies.opposite(c), regripTime);
+		return t;
+	}
+
+	/**
+	 * Lowest cost any single turn can have, after any face; a lower bound for
+	 * searches, which settle for the shortest solution if it isn't positive.
+	 */
+	public double minCost() {
+		double min = Double.MAX_VALUE;
+		for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+			Cube.Color c = Cubies.face(m);
+			min = Math.min(min, cost(null, c, Cubies.dir(m)));
+			for(Cube.Color prev : Cubies.FACES) {
+				if(prev != c) min = Math.min(min, cost(prev, c, Cubies.dir(m)));
+			}
+		}
+		return min;
+	}
+
+	/** Total cost of a move log; non-move entries such as stage markers are skipped **/
+	public double estimate(List<String> log) {
+		double total = 0;
+		Cube.Color prev = null;
+		for(String entry : log) {
+			Cube.Color c = face(entry);
+			if(c == null) continue;
+			total += cost(prev, c, dir(entry));
+			prev = c;
+		}
+		return total;
+	}
+
+	/**
+	 * Cheapest way to turn face c by the given number of clockwise quarter
+	 * turns, as a list of directions. Empty when quarters is a multiple of 4.
+	 */
+	public int[] cheapest(Cube.Color prev, Cube.Color c, int quarters) {
+		int q = ((quarters % 4) + 4) % 4;
+		if(q == 0) return new int[0];
+		int[][] options;
+		if(q == 1) options = new int[][]{ { Cube.CW }, { Cube.DBL_CW, Cube.CCW }, { Cube.CCW, Cube.CCW, Cube.CCW } };
+		else if(q == 2) options = new int[][]{ { Cube.DBL_CW }, { Cube.CW, Cube.CW }, { Cube.CCW, Cube.CCW } };
+		else options = new int[][]{ { Cube.CCW }, { Cube.DBL_CW, Cube.CW }, { Cube.CW, Cube.CW, Cube.CW } };
+
+		int[] best = null;
+		double bestCost = 0;
+		for(int[] dirs : options) {
+			double total = 0;
+			Cube.Color p = prev;
+			for(int dir : dirs) {
+				total += cost(p, c, dir);
+				p = c;
+			}
+			if(best == null || total < bestCost) {
+				best = dirs;
+				bestCost = total;
+			}
+		}
+		return best;
+	}
+
+	public double cheapestCost(Cube.Color prev, Cube.Color c, int quarters) {
+		double total = 0;
+		Cube.Color p = prev;
+		for(int dir : cheapest(prev, c, quarters)) {
+			total += cost(p, c, dir);
+			p = c;
+		}
+		return total;
+	}
+
+	public static Cube.Color face(String move) {
+		if(move == null || move.length() == 0 || move.length() > 2) return null;
+		for(Cube.Color c : Cubies.FACES) {
+			if(move.startsWith(c.toString())) return c;
+		}
+		return null;
+	}
+
+	public static int dir(String move) {
+		if(move.length() == 1) return Cube.CW;
+		return (move.charAt(1) == '\'') ? Cube.CCW : Cube.DBL_CW;
+	}
+
+	/** Clockwise quarter turns made by a move, 1 to 3 **/
+	public static int quarters(String move) {
+		return (dir(move) + 4) % 4;
+	}
+
+}
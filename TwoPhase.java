@@ -0,0 +1,434 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kociemba's two-phase method. Phase 1 turns any face until every corner
+ * and edge is oriented and the four middle-layer edges are in the middle
+ * layer; phase 2 then solves the cube using only white and yellow turns
+ * and half turns of the sides, which keep all of that in place. Both
+ * phases are iterative-deepening searches over small coordinates, bounded
+ * by distance tables built once by breadth-first search (about 8 MB).
+ *
+ * After the first solution it keeps trying longer phase 1 solutions, up to
+ * maxProbes of them, and keeps the shortest total; solutions average
+ * about 21 moves where the layer-by-layer method needs over 130.
+ */
+public class TwoPhase implements Method {
+
+	private static final int MAX_PHASE1 = 12;
+	private static final int MAX_PHASE2 = 18;
+
+	// Edge slots (and their home pieces) with no white or yellow tile
+	private static final int[] MID = { 2, 5, 8, 11 };
+	private static final int[] UD = { 0, 1, 3, 4, 6, 7, 9, 10 };
+	private static final int[] SLOT_INDEX = slotIndex();
+
+	private static final int TWISTS = 2187;
+	private static final int FLIPS = 2048;
+	private static final int SLICES = 495;
+	private static final int PERMS = 40320;
+	private static final int SLICE_PERMS = 24;
+
+	// Edge orientation is measured by a key tile: white or yellow if the
+	// edge has one, else red or orange. It's good when the key tile is on
+	// the slot's white or yellow face, or for middle slots on its red or
+	// orange face, which only red and orange quarter turns change.
+	private static final int[] KEY_PARITY = new int[12];
+	private static final int[] REF_INDEX = new int[12];
+
+	private static final int[] SLICE_MASKS = new int[SLICES];
+	private static final int[] SLICE_RANK = new int[1 << 12];
+	private static final int SLICE_SOLVED;
+
+	private static final boolean[] PHASE2 = new boolean[Cubies.NUM_MOVES];
+
+	static {
+		int[] corners = new int[8], edges = new int[12];
+		Cubies.read(new Cube(true), corners, edges);
+		for(int s = 0; s < 12; s++) {
+			List<Cube.Color> colors = Cubies.EDGES[s].colors;
+			Cube.Color key = keyColor(colors);
+			REF_INDEX[s] = colors.indexOf(key);
+			KEY_PARITY[s] = (colors.get(edges[s] % 2) == key) ? 0 : 1;
+		}
+
+		int n = 0;
+		for(int mask = 0; mask < (1 << 12); mask++) {
+			if(Integer.bitCount(mask) != 4) continue;
+			SLICE_MASKS[n] = mask;
+			SLICE_RANK[mask] = n++;
+		}
+		int solved = 0;
+		for(int s : MID) solved |= 1 << s;
+		SLICE_SOLVED = SLICE_RANK[solved];
+
+		for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+			Cube.Color c = Cubies.face(m);
+			PHASE2[m] = c == Cube.WHITE || c == Cube.YELLOW || Cubies.dir(m) == Cube.DBL_CW;
+		}
+	}
+
+	private static Tables tables;
+
+	private final String name;
+	private TurnCost turnCost = TurnCost.HTM;
+	private int maxProbes = 20;
+	private volatile boolean cancelled;
+
+	private final Cancel cancel = new Cancel() {
+		public boolean requested() {
+			return cancelled || Thread.currentThread().isInterrupted();
+		}
+	};
+
+	public TwoPhase() {
+		this("two-phase");
+	}
+
+	public TwoPhase(String name) {
+		this.name = name;
+	}
+
+	/** Used to write out the solution: merged turns are split the cheapest way **/
+	public TwoPhase setTurnCost(TurnCost turnCost) {
+		this.turnCost = turnCost;
+		return this;
+	}
+
+	/** How many phase 1 solutions to finish before settling for the shortest so far **/
+	public TwoPhase setMaxProbes(int probes) {
+		this.maxProbes = probes;
+		return this;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/** The whole solution is found before the first turn, so a cancelled solve leaves the cube as it was **/
+	public boolean solve(Cube cube) {
+		cancelled = false;
+		boolean finished = false;
+		try {
+			cube.mark(Solver.LOG_START);
+			int[] corners = new int[8], edges = new int[12];
+			Cubies.read(cube, corners, edges);
+			int[] moves = solve(corners, edges, cancel);
+			if(moves == null) return false;
+
+			List<String> log = new ArrayList<String>();
+			for(int m : moves) log.add(Cube.moveName(Cubies.face(m), Cubies.dir(m)));
+			for(String move : Cube.compress(log, turnCost)) cube.rotate(TurnCost.face(move), TurnCost.dir(move));
+			cube.mark(Solver.LOG_END);
+			finished = true;
+			return CubeState.of(cube).isSolved();
+		} finally {
+			// As in Solver, so stream consumers are never left waiting
+			if(!finished) cube.mark(Solver.LOG_FAILED);
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public int[] solve(int[] corners, int[] edges) {
+		return solve(corners, edges, Cancel.ON_INTERRUPT);
+	}
+
+	/** Moves (see Cubies.face/dir) that solve the given state, or null if none was found or it was cancelled **/
+	public int[] solve(int[] corners, int[] edges, Cancel cancel) {
+		Search search = new Search(table(), corners, edges, maxProbes, cancel);
+		int twist = twist(corners), flip = flip(edges), slice = slice(edges);
+		for(int depth = search.t.phase1Bound(twist, flip, slice); depth <= MAX_PHASE1; depth++) {
+			if(search.best != null && depth >= search.best.length) break;
+			if(search.phase1(twist, flip, slice, 0, depth, null)) break;
+		}
+		return search.stop ? null : search.best;
+	}
+
+	private static class Search {
+		final Tables t;
+		final int[] corners, edges;
+		final int[] path = new int[MAX_PHASE1 + MAX_PHASE2];
+		final int maxProbes;
+		final Cancel cancel;
+		int probes;
+		int[] best;
+		int nodes;
+		boolean stop;
+
+		Search(Tables t, int[] corners, int[] edges, int maxProbes, Cancel cancel) {
+			this.t = t;
+			this.corners = corners;
+			this.edges = edges;
+			this.maxProbes = maxProbes;
+			this.cancel = cancel;
+		}
+
+		boolean stopped() {
+			if(!stop) stop = (nodes++ & 1023) == 0 && cancel.requested();
+			return stop;
+		}
+
+		/** True once the search should stop **/
+		boolean phase1(int twist, int flip, int slice, int depth, int togo, Cube.Color prev) {
+			if(togo == 0) {
+				if(twist != 0 || flip != 0 || slice != SLICE_SOLVED) return false;
+				// Ending on a phase 2 move just repeats a shorter phase 1
+				if(depth > 0 && PHASE2[path[depth - 1]]) return false;
+				return phase2(depth);
+			}
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				if(stopped()) return true;
+				Cube.Color c = Cubies.face(m);
+				if(skip(prev, c)) continue;
+				int tw = t.twistMove[m][twist], fl = t.flipMove[m][flip], sl = t.sliceMove[m][slice];
+				if(t.phase1Bound(tw, fl, sl) >= togo) continue;
+				path[depth] = m;
+				if(phase1(tw, fl, sl, depth + 1, togo - 1, c)) return true;
+			}
+			return false;
+		}
+
+		boolean phase2(int length1) {
+			int[] c = corners.clone(), e = edges.clone();
+			for(int i = 0; i < length1; i++) Cubies.apply(path[i], c, e);
+			int cp = cornerPerm(c), ep = udPerm(e), sp = slicePerm(e);
+
+			int limit = Math.min(MAX_PHASE2, (best == null ? Integer.MAX_VALUE : best.length - 1) - length1);
+			Cube.Color prev = length1 > 0 ? Cubies.face(path[length1 - 1]) : null;
+			for(int depth = t.phase2Bound(cp, ep, sp); depth <= limit && !stop; depth++) {
+				if(phase2(cp, ep, sp, length1, depth, prev)) {
+					best = Arrays.copyOf(path, length1 + depth);
+					break;
+				}
+			}
+			probes++;
+			return stop || (best != null && probes >= maxProbes);
+		}
+
+		boolean phase2(int cp, int ep, int sp, int depth, int togo, Cube.Color prev) {
+			if(togo == 0) return cp == 0 && ep == 0 && sp == 0;
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				if(!PHASE2[m]) continue;
+				if(stopped()) return false;
+				Cube.Color c = Cubies.face(m);
+				if(skip(prev, c)) continue;
+				int ncp = t.cornerPermMove[m][cp], nep = t.udPermMove[m][ep], nsp = t.slicePermMove[m][sp];
+				if(t.phase2Bound(ncp, nep, nsp) >= togo) continue;
+				path[depth] = m;
+				if(phase2(ncp, nep, nsp, depth + 1, togo - 1, c)) return true;
+			}
+			return false;
+		}
+
+		// Same face twice, or opposite faces in both orders, can always be shortened
+		private static boolean skip(Cube.Color prev, Cube.Color c) {
+			if(prev == null) return false;
+			return c == prev || (c == Cubies.opposite(prev) && c.val < prev.val);
+		}
+	}
+
+	private static class Tables {
+		final int[][] twistMove = new int[Cubies.NUM_MOVES][TWISTS];
+		final int[][] flipMove = new int[Cubies.NUM_MOVES][FLIPS];
+		final int[][] sliceMove = new int[Cubies.NUM_MOVES][SLICES];
+		final int[][] cornerPermMove = new int[Cubies.NUM_MOVES][];
+		final int[][] udPermMove = new int[Cubies.NUM_MOVES][];
+		final int[][] slicePermMove = new int[Cubies.NUM_MOVES][];
+
+		final byte[] twistSlice, flipSlice, cornerSlice, udSlice;
+
+		Tables() {
+			int[] corners = new int[8], edges = new int[12];
+			int[] perm = new int[8];
+			for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+				for(int i = 0; i < TWISTS; i++) {
+					int sum = 0;
+					for(int s = 6, x = i; s >= 0; s--, x /= 3) {
+						corners[s] = (s * 3) + (x % 3);
+						sum += x % 3;
+					}
+					corners[7] = 21 + ((3 - (sum % 3)) % 3);
+					Cubies.apply(m, corners, edges);
+					twistMove[m][i] = twist(corners);
+				}
+				for(int i = 0; i < FLIPS; i++) {
+					int sum = 0;
+					for(int s = 10, x = i; s >= 0; s--, x /= 2) {
+						edges[s] = (s * 2) + (REF_INDEX[s] ^ KEY_PARITY[s] ^ (x % 2));
+						sum += x % 2;
+					}
+					edges[11] = 22 + (REF_INDEX[11] ^ KEY_PARITY[11] ^ (sum % 2));
+					Cubies.apply(m, corners, edges);
+					flipMove[m][i] = flip(edges);
+				}
+				for(int i = 0; i < SLICES; i++) {
+					int mid = 0, ud = 0;
+					for(int s = 0; s < 12; s++) {
+						if((SLICE_MASKS[i] & (1 << s)) != 0) edges[MID[mid++]] = s * 2;
+						else edges[UD[ud++]] = s * 2;
+					}
+					Cubies.apply(m, corners, edges);
+					sliceMove[m][i] = slice(edges);
+				}
+				if(!PHASE2[m]) continue;
+
+				cornerPermMove[m] = new int[PERMS];
+				udPermMove[m] = new int[PERMS];
+				for(int i = 0; i < PERMS; i++) {
+					unrank(i, perm);
+					for(int j = 0; j < 8; j++) corners[j] = perm[j] * 3;
+					for(int j = 0; j < 4; j++) edges[MID[j]] = MID[j] * 2;
+					for(int j = 0; j < 8; j++) edges[UD[j]] = UD[perm[j]] * 2;
+					Cubies.apply(m, corners, edges);
+					cornerPermMove[m][i] = cornerPerm(corners);
+					udPermMove[m][i] = udPerm(edges);
+				}
+				slicePermMove[m] = new int[SLICE_PERMS];
+				int[] perm4 = new int[4];
+				for(int i = 0; i < SLICE_PERMS; i++) {
+					unrank(i, perm4);
+					for(int j = 0; j < 8; j++) edges[UD[j]] = UD[j] * 2;
+					for(int j = 0; j < 4; j++) edges[MID[j]] = MID[perm4[j]] * 2;
+					Cubies.apply(m, corners, edges);
+					slicePermMove[m][i] = slicePerm(edges);
+				}
+			}
+
+			twistSlice = distances(twistMove, TWISTS, sliceMove, SLICES, SLICE_SOLVED);
+			flipSlice = distances(flipMove, FLIPS, sliceMove, SLICES, SLICE_SOLVED);
+			cornerSlice = distances(cornerPermMove, PERMS, slicePermMove, SLICE_PERMS, 0);
+			udSlice = distances(udPermMove, PERMS, slicePermMove, SLICE_PERMS, 0);
+		}
+
+		int phase1Bound(int twist, int flip, int slice) {
+			return Math.max(twistSlice[(twist * SLICES) + slice], flipSlice[(flip * SLICES) + slice]);
+		}
+
+		int phase2Bound(int cp, int ep, int sp) {
+			return Math.max(cornerSlice[(cp * SLICE_PERMS) + sp], udSlice[(ep * SLICE_PERMS) + sp]);
+		}
+
+		/** Breadth-first distances from solved over pairs of a coordinate (solved at 0) and a slice coordinate **/
+		private static byte[] distances(int[][] move, int size, int[][] slice, int slices, int sliceSolved) {
+			byte[] d = new byte[size * slices];
+			Arrays.fill(d, (byte) -1);
+			int[] queue = new int[d.length];
+			int head = 0, tail = 0;
+			queue[tail++] = sliceSolved;
+			d[queue[0]] = 0;
+			while(head < tail) {
+				int idx = queue[head++];
+				int x = idx / slices, s = idx % slices;
+				for(int m = 0; m < Cubies.NUM_MOVES; m++) {
+					if(move[m] == null) continue;
+					int next = (move[m][x] * slices) + slice[m][s];
+					if(d[next] < 0) {
+						d[next] = (byte) (d[idx] + 1);
+						queue[tail++] = next;
+					}
+				}
+			}
+			return d;
+		}
+	}
+
+	private static synchronized Tables table() {
+		if(tables == null) tables = new Tables();
+		return tables;
+	}
+
+	private static Cube.Color keyColor(List<Cube.Color> colors) {
+		for(Cube.Color c : colors) {
+			if(c == Cube.WHITE || c == Cube.YELLOW) return c;
+		}
+		return colors.contains(Cube.RED) ? Cube.RED : Cube.ORANGE;
+	}
+
+	private static int[] slotIndex() {
+		int[] index = new int[12];
+		for(int i = 0; i < 4; i++) index[MID[i]] = i;
+		for(int i = 0; i < 8; i++) index[UD[i]] = i;
+		return index;
+	}
+
+	// Coordinates are by slot: the orientation of whatever piece is there
+
+	private static int twist(int[] corners) {
+		int[] at = new int[8];
+		for(int p = 0; p < 8; p++) at[corners[p] / 3] = corners[p] % 3;
+		int twist = 0;
+		for(int s = 0; s < 7; s++) twist = (twist * 3) + at[s];
+		return twist;
+	}
+
+	private static int flip(int[] edges) {
+		int[] at = new int[12];
+		for(int p = 0; p < 12; p++) {
+			int s = edges[p] / 2;
+			at[s] = ((edges[p] % 2) ^ KEY_PARITY[p]) == REF_INDEX[s] ? 0 : 1;
+		}
+		int flip = 0;
+		for(int s = 0; s < 11; s++) flip = (flip * 2) + at[s];
+		return flip;
+	}
+
+	private static int slice(int[] edges) {
+		int mask = 0;
+		for(int p : MID) mask |= 1 << (edges[p] / 2);
+		return SLICE_RANK[mask];
+	}
+
+	private static int cornerPerm(int[] corners) {
+		int[] perm = new int[8];
+		for(int p = 0; p < 8; p++) perm[p] = corners[p] / 3;
+		return rank(perm);
+	}
+
+	private static int udPerm(int[] edges) {
+		int[] perm = new int[8];
+		for(int j = 0; j < 8; j++) perm[j] = SLOT_INDEX[edges[UD[j]] / 2];
+		return rank(perm);
+	}
+
+	private static int slicePerm(int[] edges) {
+		int[] perm = new int[4];
+		for(int j = 0; j < 4; j++) perm[j] = SLOT_INDEX[edges[MID[j]] / 2];
+		return rank(perm);
+	}
+
+	private static int rank(int[] perm) {
+		int rank = 0;
+		for(int i = 0; i < perm.length; i++) {
+			int smaller = 0;
+			for(int j = i + 1; j < perm.length; j++) {
+				if(perm[j] < perm[i]) smaller++;
+			}
+			rank = (rank * (perm.length - i)) + smaller;
+		}
+		return rank;
+	}
+
+	private static void unrank(int rank, int[] perm) {
+		int n = perm.length;
+		int[] digits = new int[n];
+		for(int i = n - 1; i >= 0; i--) {
+			digits[i] = rank % (n - i);
+			rank /= (n - i);
+		}
+		boolean[] used = new boolean[n];
+		for(int i = 0; i < n; i++) {
+			int v = -1;
+			for(int r = digits[i]; r >= 0; r--) {
+				v++;
+				while(used[v]) v++;
+			}
+			used[v] = true;
+			perm[i] = v;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+import java.util.List;
+import java.util.Random;
+
+public class TwoPhaseTest {
+
+	private static int failures = 0;
+
+	private static void check(boolean ok, String what) {
+		if(!ok) {
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		TwoPhase method = new TwoPhase();
+		long moves = 0;
+
+		System.out.println("Solve " + count + " seeded scrambles, and the solved cube, with the two-phase method");
+		for(int i = -1; i < count; i++) {
+			Cube cube = new Cube(true);
+			if(i >= 0) cube.mix(30, new Random(i));
+			cube.getLog().clear();
+			boolean ok = method.solve(cube);
+			List<String> log = cube.getLog();
+			int length = 0;
+			for(String entry : log) {
+				if(cube.isMove(entry)) length++;
+			}
+			check(ok && CubeState.of(cube).isSolved() && length <= 30 && (i >= 0 || length == 0), "seed " + i + " gave " + log);
+			check(log.get(0).equals(Solver.LOG_START) && log.get(log.size() - 1).equals(Solver.LOG_END), "markers for seed " + i);
+			if(i >= 0) moves += length;
+		}
+		System.out.println("Moves per solve: " + ((double) moves / Math.max(1, count)));
+
+		System.out.println("Interrupted solve");
+		Cube cube = new Cube(true);
+		cube.mix(30, new Random(0));
+		cube.getLog().clear();
+		CubeState before = CubeState.of(cube);
+		Thread.currentThread().interrupt();
+		boolean ok = method.solve(cube);
+		Thread.interrupted();
+		List<String> log = cube.getLog();
+		check(!ok && CubeState.of(cube).equals(before), "interrupted solve turned the cube");
+		check(log.get(0).equals(Solver.LOG_START) && log.get(log.size() - 1).equals(Solver.LOG_FAILED), "interrupted solve logged " + log);
+
+		if(failures == 0) {
+			System.out.println("All checks passed");
+		} else {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+	}
+}